@@ -0,0 +1,213 @@
+import benchmarks.Workload;
+import keygenerators.IncrementalKeyGenerator;
+import keygenerators.KeyGenerator;
+import keygenerators.KeySpace;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Operations measured by the JMH benchmarks (package benchmarks). They are built here, next to the code under test,
+ * because JMH does not accept benchmark classes in the unnamed package and named packages cannot reference it.
+ * All inputs are derived from a fixed seed, so that every run measures the same work.
+ */
+public final class Workloads {
+    private static final long SEED = 20230101L;
+    private static final String PLAINTEXT = "haslo";
+    private static final int N_INPUTS = 1024; // power of two, inputs are cycled with a mask
+
+    private Workloads() {
+    }
+
+    // Key schedule and encryption through the String API, as used by the encrypt mode
+    public static Workload initializeAndEncryptString() {
+        DES des = new DES();
+        byte[][] keys = randomKeys(N_INPUTS);
+        int[] next = {0};
+
+        return () -> {
+            des.initializeEncryptor(keys[next[0]++ & (N_INPUTS - 1)]);
+            return des.encrypt(PLAINTEXT);
+        };
+    }
+
+    // Key schedule and encryption of preprocessed blocks, as used by chain replays
+    public static Workload initializeAndEncryptBlocks() {
+        DES des = new DES();
+        byte[][] keys = randomKeys(N_INPUTS);
+        long[] plainBlocks = DES.toBlocks(PLAINTEXT);
+        long[] cipherBlocks = new long[plainBlocks.length];
+        int[] next = {0};
+
+        return () -> {
+            des.initializeEncryptor(keys[next[0]++ & (N_INPUTS - 1)]);
+            des.encrypt(plainBlocks, cipherBlocks);
+            return cipherBlocks;
+        };
+    }
+
+    // BitslicedDES.LANES keys at once, as used by generation and the rainbow walk
+    public static Workload bitslicedEncrypt() {
+        BitslicedDES des = new BitslicedDES();
+        byte[][] keys = randomKeys(BitslicedDES.LANES);
+        long[] keyBlocks = new long[BitslicedDES.LANES];
+        long[] plainBlocks = DES.toBlocks(PLAINTEXT);
+        long[] cipherBlocks = new long[BitslicedDES.LANES * plainBlocks.length];
+
+        for (int i = 0; i < keyBlocks.length; i++) {
+            keyBlocks[i] = DESEngine.toLong(keys[i], 0);
+        }
+
+        return () -> {
+            des.encrypt(keyBlocks, plainBlocks, cipherBlocks);
+            return cipherBlocks;
+        };
+    }
+
+    public static Workload reduce() {
+        RainbowTable rainbowTable = new RainbowTable(DES.KEY_LENGTH, 1000, PLAINTEXT);
+        Random random = new Random(SEED);
+        long[] cryptograms = new long[N_INPUTS];
+        byte[] key = new byte[DES.KEY_LENGTH];
+        int[] next = {0};
+
+        for (int i = 0; i < cryptograms.length; i++) {
+            cryptograms[i] = random.nextLong();
+        }
+
+        return () -> {
+            int i = next[0]++ & (N_INPUTS - 1);
+            rainbowTable.reduce(cryptograms, i, 1, i, key);
+            return key; // not the returned index, which would be boxed
+        };
+    }
+
+    public static Workload incrementalKeyGeneratorNext() {
+        KeyGenerator keyGenerator = new IncrementalKeyGenerator(DES.DES_KEY_CHARSET.getBytes(), SEED);
+        return () -> keyGenerator.next(1L);
+    }
+
+    // Index to key conversion done by every reduction and for every start key
+    public static Workload keySpaceIndexToKey() {
+        Random random = new Random(SEED);
+        long[] indices = new long[N_INPUTS];
+        byte[] key = new byte[DES.KEY_LENGTH];
+        int[] next = {0};
+
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = (long) (random.nextDouble() * KeySpace.DIGITS.size());
+        }
+
+        return () -> {
+            KeySpace.DIGITS.indexToKey(indices[next[0]++ & (N_INPUTS - 1)], key);
+            return key;
+        };
+    }
+
+    // A single lane group, the smallest unit of work of a generation thread
+    public static Workload generateLaneGroup(int chainLength) {
+        RainbowTable rainbowTable = new RainbowTable(DES.KEY_LENGTH, chainLength, PLAINTEXT);
+
+        return () -> {
+            rainbowTable.generate(BitslicedDES.LANES);
+            return rainbowTable.getTableSize();
+        };
+    }
+
+    public static Workload generate(int chainLength, int nChains, int threads) {
+        RainbowTable rainbowTable = new RainbowTable(DES.KEY_LENGTH, chainLength, PLAINTEXT);
+
+        return () -> {
+            rainbowTable.generate(nChains, threads);
+            return rainbowTable.getTableSize();
+        };
+    }
+
+    public static Workload saveToFile(int chainLength, int nChains) throws IOException, InterruptedException {
+        RainbowTable rainbowTable = generateTable(chainLength, nChains);
+        File file = File.createTempFile("rainbow-table-benchmark", ".bin");
+
+        return new Workload() {
+            @Override
+            public Object run() {
+                rainbowTable.saveToFile(file.getPath());
+                return file;
+            }
+
+            @Override
+            public void close() {
+                file.delete();
+            }
+        };
+    }
+
+    // tableStore: mapped (file mapped on load, chains read on demand), compressed (the same for a compressed file)
+    // or heap (copied into a hash table)
+    public static Workload readFromFile(int chainLength, int nChains, String tableStore) throws IOException, InterruptedException {
+        File file = File.createTempFile("rainbow-table-benchmark", ".bin");
+        generateTable(chainLength, nChains).saveToFile(file.getPath(), tableStore.equals("compressed"));
+
+        return new Workload() {
+            @Override
+            public Object run() throws IOException {
+                RainbowTable rainbowTable = RainbowTable.readFromFile(file.getPath());
+                if (tableStore.equals("heap")) {
+                    rainbowTable.loadIntoHashTable();
+                }
+                return rainbowTable;
+            }
+
+            @Override
+            public void close() {
+                file.delete();
+            }
+        };
+    }
+
+    // Single-threaded lookups of cryptograms under random keys, mostly not covered by the table, i.e. full rainbow walks
+    public static Workload lookup(int chainLength, int nChains, String tableStore) throws IOException, InterruptedException {
+        File file = File.createTempFile("rainbow-table-benchmark", ".bin");
+        RainbowTable rainbowTable;
+        try {
+            generateTable(chainLength, nChains).saveToFile(file.getPath(), tableStore.equals("compressed"));
+            rainbowTable = RainbowTable.readFromFile(file.getPath());
+        } finally {
+            file.delete(); // the mapping stays valid
+        }
+        if (tableStore.equals("heap")) {
+            rainbowTable.loadIntoHashTable();
+        }
+
+        DES des = new DES();
+        byte[][] keys = randomKeys(N_INPUTS);
+        String[] cryptograms = new String[N_INPUTS];
+        int[] next = {0};
+
+        for (int i = 0; i < N_INPUTS; i++) {
+            des.initializeEncryptor(keys[i]);
+            cryptograms[i] = des.encrypt(PLAINTEXT);
+        }
+
+        return () -> rainbowTable.lookup(cryptograms[next[0]++ & (N_INPUTS - 1)]);
+    }
+
+    // nChains start keys, the table holds the chains left after end key collisions
+    private static RainbowTable generateTable(int chainLength, int nChains) throws InterruptedException {
+        RainbowTable rainbowTable = new RainbowTable(DES.KEY_LENGTH, chainLength, PLAINTEXT);
+        rainbowTable.generate(nChains, Runtime.getRuntime().availableProcessors());
+        return rainbowTable;
+    }
+
+    private static byte[][] randomKeys(int n) {
+        Random random = new Random(SEED);
+        byte[][] keys = new byte[n][DES.KEY_LENGTH];
+
+        for (byte[] key : keys) {
+            for (int i = 0; i < key.length; i++) {
+                key[i] = (byte) DES.DES_KEY_CHARSET.charAt(random.nextInt(DES.DES_KEY_CHARSET.length()));
+            }
+        }
+        return keys;
+    }
+}
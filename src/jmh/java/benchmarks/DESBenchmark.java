@@ -0,0 +1,44 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DESBenchmark {
+
+	private static final int LANES = 64; // BitslicedDES.LANES
+
+	private Workload initializeAndEncryptString;
+	private Workload initializeAndEncryptBlocks;
+	private Workload bitslicedEncrypt;
+
+	@Setup
+	public void setup() {
+		initializeAndEncryptString = Workload.create("initializeAndEncryptString");
+		initializeAndEncryptBlocks = Workload.create("initializeAndEncryptBlocks");
+		bitslicedEncrypt = Workload.create("bitslicedEncrypt");
+	}
+
+	@Benchmark
+	public Object initializeAndEncryptString() throws Exception {
+		return initializeAndEncryptString.run();
+	}
+
+	@Benchmark
+	public Object initializeAndEncryptBlocks() throws Exception {
+		return initializeAndEncryptBlocks.run();
+	}
+
+	// Reported per key, i.e. per lane
+	@Benchmark
+	@OperationsPerInvocation(LANES)
+	public Object bitslicedEncrypt() throws Exception {
+		return bitslicedEncrypt.run();
+	}
+}
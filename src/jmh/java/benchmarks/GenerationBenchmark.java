@@ -0,0 +1,35 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chain generation by a single thread, in chains per second; links per second are chains per second * chainLength.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class GenerationBenchmark {
+
+	private static final int LANES = 64; // BitslicedDES.LANES
+
+	@Param({"100", "1000", "10000"})
+	public int chainLength;
+
+	private Workload generateLaneGroup;
+
+	@Setup
+	public void setup() {
+		generateLaneGroup = Workload.create("generateLaneGroup", chainLength);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LANES)
+	public Object generateLaneGroup() throws Exception {
+		return generateLaneGroup.run();
+	}
+}
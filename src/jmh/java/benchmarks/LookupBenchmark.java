@@ -0,0 +1,37 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a single-threaded lookup, in milliseconds per cryptogram.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class LookupBenchmark {
+
+	private static final int N_CHAINS = 100000;
+
+	@Param({"100", "1000"})
+	public int chainLength;
+
+	@Param({"mapped", "compressed", "heap"})
+	public String tableStore;
+
+	private Workload lookup;
+
+	@Setup
+	public void setup() {
+		lookup = Workload.create("lookup", chainLength, N_CHAINS, tableStore);
+	}
+
+	@Benchmark
+	public Object lookup() throws Exception {
+		return lookup.run();
+	}
+}
@@ -0,0 +1,36 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of generate(numChains, threads) with the number of threads, in chains per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class ParallelGenerationBenchmark {
+
+	private static final int CHAIN_LENGTH = 1000;
+	private static final int N_CHAINS = 4096;
+
+	@Param({"1", "2", "4", "8"})
+	public int threads;
+
+	private Workload generate;
+
+	@Setup
+	public void setup() {
+		generate = Workload.create("generate", CHAIN_LENGTH, N_CHAINS, threads);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(N_CHAINS)
+	public Object generate() throws Exception {
+		return generate.run();
+	}
+}
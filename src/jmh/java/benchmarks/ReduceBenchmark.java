@@ -0,0 +1,40 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReduceBenchmark {
+
+	private Workload reduce;
+	private Workload incrementalKeyGeneratorNext;
+	private Workload keySpaceIndexToKey;
+
+	@Setup
+	public void setup() {
+		reduce = Workload.create("reduce");
+		incrementalKeyGeneratorNext = Workload.create("incrementalKeyGeneratorNext");
+		keySpaceIndexToKey = Workload.create("keySpaceIndexToKey");
+	}
+
+	@Benchmark
+	public Object reduce() throws Exception {
+		return reduce.run();
+	}
+
+	@Benchmark
+	public Object incrementalKeyGeneratorNext() throws Exception {
+		return incrementalKeyGeneratorNext.run();
+	}
+
+	@Benchmark
+	public Object keySpaceIndexToKey() throws Exception {
+		return keySpaceIndexToKey.run();
+	}
+}
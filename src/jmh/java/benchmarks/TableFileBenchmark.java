@@ -0,0 +1,63 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saving and loading a binary table file, in milliseconds per table.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class TableFileBenchmark {
+
+	private static final int CHAIN_LENGTH = 10;
+
+	@Param({"100000", "1000000"})
+	public int nChains;
+
+	private Workload save;
+	private Workload loadMapped;
+	private Workload loadCompressed;
+	private Workload loadIntoHashTable;
+
+	@Setup
+	public void setup() {
+		save = Workload.create("saveToFile", CHAIN_LENGTH, nChains);
+		loadMapped = Workload.create("readFromFile", CHAIN_LENGTH, nChains, "mapped");
+		loadCompressed = Workload.create("readFromFile", CHAIN_LENGTH, nChains, "compressed");
+		loadIntoHashTable = Workload.create("readFromFile", CHAIN_LENGTH, nChains, "heap");
+	}
+
+	@TearDown
+	public void tearDown() {
+		save.close();
+		loadMapped.close();
+		loadCompressed.close();
+		loadIntoHashTable.close();
+	}
+
+	@Benchmark
+	public Object save() throws Exception {
+		return save.run();
+	}
+
+	@Benchmark
+	public Object loadMapped() throws Exception {
+		return loadMapped.run();
+	}
+
+	@Benchmark
+	public Object loadCompressed() throws Exception {
+		return loadCompressed.run();
+	}
+
+	@Benchmark
+	public Object loadIntoHashTable() throws Exception {
+		return loadIntoHashTable.run();
+	}
+}
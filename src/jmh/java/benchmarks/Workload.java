@@ -0,0 +1,32 @@
+package benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * A single benchmarked operation. Workloads are created by the static factory methods of the class Workloads
+ * in the unnamed package, which the benchmarks can only reach by reflection.
+ */
+public interface Workload extends AutoCloseable {
+
+	Object run() throws Exception;
+
+	@Override
+	default void close() {
+	}
+
+	// Calls Workloads.<factoryMethod>(args), Integer arguments are passed as int
+	static Workload create(String factoryMethod, Object... args) {
+		Class<?>[] types = new Class<?>[args.length];
+		for (int i = 0; i < args.length; i++) {
+			types[i] = args[i] instanceof Integer ? int.class : args[i].getClass();
+		}
+
+		try {
+			return (Workload) Class.forName("Workloads").getMethod(factoryMethod, types).invoke(null, args);
+		} catch (InvocationTargetException e) {
+			throw new IllegalStateException("Nie udało się przygotować obciążenia " + factoryMethod, e.getCause());
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Brak obciążenia " + factoryMethod, e);
+		}
+	}
+}
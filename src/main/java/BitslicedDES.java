@@ -0,0 +1,833 @@
+public class BitslicedDES {
+    public static final int LANES = 64; // one lane per bit of a long
+    private static final int ROUNDS = 16;
+
+    private static final int[] IP = {
+            58, 50, 42, 34, 26, 18, 10, 2, 60, 52, 44, 36, 28, 20, 12, 4,
+            62, 54, 46, 38, 30, 22, 14, 6, 64, 56, 48, 40, 32, 24, 16, 8,
+            57, 49, 41, 33, 25, 17, 9, 1, 59, 51, 43, 35, 27, 19, 11, 3,
+            61, 53, 45, 37, 29, 21, 13, 5, 63, 55, 47, 39, 31, 23, 15, 7
+    };
+    private static final int[] FP = {
+            40, 8, 48, 16, 56, 24, 64, 32, 39, 7, 47, 15, 55, 23, 63, 31,
+            38, 6, 46, 14, 54, 22, 62, 30, 37, 5, 45, 13, 53, 21, 61, 29,
+            36, 4, 44, 12, 52, 20, 60, 28, 35, 3, 43, 11, 51, 19, 59, 27,
+            34, 2, 42, 10, 50, 18, 58, 26, 33, 1, 41, 9, 49, 17, 57, 25
+    };
+
+    // Key bit (0 == most significant) feeding every subkey bit -- in a bitsliced key schedule selecting a slice is free
+    private static final int[][] SUBKEY_BITS = new int[ROUNDS][48];
+
+    static {
+        long[] subkeys = new long[ROUNDS];
+        for (int bit = 0; bit < 64; bit++) {
+            DESEngine.computeSubkeys(1L << (63 - bit), subkeys);
+            for (int r = 0; r < ROUNDS; r++) {
+                for (int k = 0; k < 48; k++) {
+                    if (((subkeys[r] >>> (47 - k)) & 1) != 0) {
+                        SUBKEY_BITS[r][k] = bit;
+                    }
+                }
+            }
+        }
+    }
+
+    // Working state, allocated once per instance -- an instance must not be shared between threads
+    private final long[] keySlices = new long[64];
+    private final long[] l = new long[32], r = new long[32], f = new long[32];
+    private final long[] block = new long[64];
+
+    /**
+     * Encrypts the same plaintext under LANES keys at once.
+     * cipherBlocks[lane * plainBlocks.length + i] receives block i of the cryptogram of keys[lane].
+     */
+    public void encrypt(long[] keys, long[] plainBlocks, long[] cipherBlocks) {
+        System.arraycopy(keys, 0, keySlices, 0, LANES);
+        transpose(keySlices);
+
+        for (int b = 0; b < plainBlocks.length; b++) {
+            encryptBlock(plainBlocks[b]);
+
+            transpose(block);
+            for (int lane = 0; lane < LANES; lane++) {
+                cipherBlocks[lane * plainBlocks.length + b] = block[lane];
+            }
+        }
+    }
+
+    private void encryptBlock(long plainBlock) {
+        // Plaintext is shared by all lanes, so every slice is either all zeros or all ones
+        for (int i = 0; i < 32; i++) {
+            l[i] = -((plainBlock >>> (64 - IP[i])) & 1);
+            r[i] = -((plainBlock >>> (64 - IP[32 + i])) & 1);
+        }
+
+        // E expansion and P are folded into the slice indices below, f positions are the inverse of P
+        long[] left = l, right = r, t, k = keySlices;
+        for (int round = 0; round < ROUNDS; round++) {
+            int[] kb = SUBKEY_BITS[round];
+
+            s1(right[31] ^ k[kb[0]], right[0] ^ k[kb[1]], right[1] ^ k[kb[2]],
+                    right[2] ^ k[kb[3]], right[3] ^ k[kb[4]], right[4] ^ k[kb[5]], f, 8, 16, 22, 30);
+            s2(right[3] ^ k[kb[6]], right[4] ^ k[kb[7]], right[5] ^ k[kb[8]],
+                    right[6] ^ k[kb[9]], right[7] ^ k[kb[10]], right[8] ^ k[kb[11]], f, 12, 27, 1, 17);
+            s3(right[7] ^ k[kb[12]], right[8] ^ k[kb[13]], right[9] ^ k[kb[14]],
+                    right[10] ^ k[kb[15]], right[11] ^ k[kb[16]], right[12] ^ k[kb[17]], f, 23, 15, 29, 5);
+            s4(right[11] ^ k[kb[18]], right[12] ^ k[kb[19]], right[13] ^ k[kb[20]],
+                    right[14] ^ k[kb[21]], right[15] ^ k[kb[22]], right[16] ^ k[kb[23]], f, 25, 19, 9, 0);
+            s5(right[15] ^ k[kb[24]], right[16] ^ k[kb[25]], right[17] ^ k[kb[26]],
+                    right[18] ^ k[kb[27]], right[19] ^ k[kb[28]], right[20] ^ k[kb[29]], f, 7, 13, 24, 2);
+            s6(right[19] ^ k[kb[30]], right[20] ^ k[kb[31]], right[21] ^ k[kb[32]],
+                    right[22] ^ k[kb[33]], right[23] ^ k[kb[34]], right[24] ^ k[kb[35]], f, 3, 28, 10, 18);
+            s7(right[23] ^ k[kb[36]], right[24] ^ k[kb[37]], right[25] ^ k[kb[38]],
+                    right[26] ^ k[kb[39]], right[27] ^ k[kb[40]], right[28] ^ k[kb[41]], f, 31, 11, 21, 6);
+            s8(right[27] ^ k[kb[42]], right[28] ^ k[kb[43]], right[29] ^ k[kb[44]],
+                    right[30] ^ k[kb[45]], right[31] ^ k[kb[46]], right[0] ^ k[kb[47]], f, 4, 26, 14, 20);
+
+            for (int i = 0; i < 32; i++) {
+                left[i] ^= f[i];
+            }
+            t = left;
+            left = right;
+            right = t;
+        }
+
+        // Pre-output block is R16 L16 (the halves are not swapped after the last round)
+        for (int i = 0; i < 64; i++) {
+            int bit = FP[i] - 1;
+            block[i] = bit < 32 ? right[bit] : left[bit - 32];
+        }
+    }
+
+    // In-place transpose of a 64x64 bit matrix (row i == a[i], column 0 == most significant bit)
+    static void transpose(long[] a) {
+        long m = 0x00000000FFFFFFFFL;
+        for (int j = 32; j != 0; j >>>= 1, m ^= (m << j)) {
+            for (int k = 0; k < 64; k = ((k | j) + 1) & ~j) {
+                long t = (a[k] ^ (a[k | j] >>> j)) & m;
+                a[k] ^= t;
+                a[k | j] ^= t << j;
+            }
+        }
+    }
+
+    /*
+     * S-box circuits, generated from the S-box tables: every output bit is the algebraic normal form of the S-box
+     * (XOR of AND-monomials of the six inputs), with monomials and XOR pairs shared between the four outputs.
+     * x0 is the first (most significant) S-box input, o0..o3 are the positions in f of the four S-box output bits.
+     */
+
+    private static void s1(long x0, long x1, long x2, long x3, long x4, long x5,
+                           long[] f, int o0, int o1, int o2, int o3) {
+        long m3 = x4 & x5;
+        long m5 = x3 & x5;
+        long m6 = x3 & x4;
+        long m7 = m6 & x5;
+        long m9 = x2 & x5;
+        long m10 = x2 & x4;
+        long m11 = m10 & x5;
+        long m12 = x2 & x3;
+        long m13 = m12 & x5;
+        long m14 = m12 & x4;
+        long m15 = m14 & x5;
+        long m17 = x1 & x5;
+        long m18 = x1 & x4;
+        long m20 = x1 & x3;
+        long m21 = m20 & x5;
+        long m22 = m20 & x4;
+        long m23 = m22 & x5;
+        long m24 = x1 & x2;
+        long m25 = m24 & x5;
+        long m26 = m24 & x4;
+        long m27 = m26 & x5;
+        long m28 = m24 & x3;
+        long m29 = m28 & x5;
+        long m33 = x0 & x5;
+        long m34 = x0 & x4;
+        long m35 = m34 & x5;
+        long m36 = x0 & x3;
+        long m37 = m36 & x5;
+        long m38 = m36 & x4;
+        long m40 = x0 & x2;
+        long m42 = m40 & x4;
+        long m43 = m42 & x5;
+        long m44 = m40 & x3;
+        long m45 = m44 & x5;
+        long m46 = m44 & x4;
+        long m47 = m46 & x5;
+        long m48 = x0 & x1;
+        long m49 = m48 & x5;
+        long m50 = m48 & x4;
+        long m51 = m50 & x5;
+        long m52 = m48 & x3;
+        long m53 = m52 & x5;
+        long m54 = m52 & x4;
+        long m55 = m54 & x5;
+        long m56 = m48 & x2;
+        long m57 = m56 & x5;
+        long m58 = m56 & x4;
+        long m59 = m58 & x5;
+        long m60 = m56 & x3;
+        long m61 = m60 & x5;
+        long t0 = m34 ^ m44;
+        long t1 = m56 ^ m59;
+        long t2 = m60 ^ m61;
+        long t3 = t0 ^ t1;
+        long t4 = t2 ^ t3;
+        long t5 = m13 ^ t4;
+        long t6 = m51 ^ m54;
+        long t7 = t5 ^ x5;
+        long t8 = m10 ^ m17;
+        long t9 = m21 ^ m25;
+        long t10 = m47 ^ t8;
+        long t11 = t10 ^ t9;
+        long t12 = m12 ^ m24;
+        long t13 = m28 ^ m52;
+        long t14 = m36 ^ m37;
+        long t15 = m42 ^ m45;
+        long t16 = m46 ^ t14;
+        long t17 = m53 ^ m7;
+        long t18 = t12 ^ t13;
+        long t19 = t15 ^ t16;
+        long t20 = t17 ^ t18;
+        long t21 = t19 ^ t6;
+        long t22 = t20 ^ t7;
+        long t23 = t21 ^ x1;
+        long t24 = t22 ^ x0;
+        long t25 = t24 ^ x4;
+        long t26 = m20 ^ m48;
+        long t27 = m22 ^ m3;
+        long t28 = m33 ^ m38;
+        long t29 = m40 ^ m50;
+        long t30 = m49 ^ m55;
+        long t31 = m57 ^ m58;
+        long t32 = m6 ^ t11;
+        long t33 = t26 ^ t30;
+        long t34 = t27 ^ t28;
+        long t35 = t29 ^ t34;
+        long t36 = t31 ^ t32;
+        long t37 = t33 ^ t36;
+        long t38 = m18 ^ m35;
+        long t39 = t38 ^ x3;
+        f[o0] = ~(m14 ^ t23 ^ t25 ^ x2);
+        f[o1] = ~(m11 ^ m15 ^ m43 ^ m5 ^ t35 ^ t37 ^ t7 ^ x1 ^ x2);
+        f[o2] = ~(m23 ^ m26 ^ m29 ^ m9 ^ t25 ^ t37 ^ t39 ^ t6);
+        f[o3] = m27 ^ t11 ^ t23 ^ t35 ^ t39 ^ t4;
+    }
+
+    private static void s2(long x0, long x1, long x2, long x3, long x4, long x5,
+                           long[] f, int o0, int o1, int o2, int o3) {
+        long m6 = x3 & x4;
+        long m7 = m6 & x5;
+        long m9 = x2 & x5;
+        long m10 = x2 & x4;
+        long m12 = x2 & x3;
+        long m13 = m12 & x5;
+        long m14 = m12 & x4;
+        long m15 = m14 & x5;
+        long m17 = x1 & x5;
+        long m18 = x1 & x4;
+        long m19 = m18 & x5;
+        long m20 = x1 & x3;
+        long m21 = m20 & x5;
+        long m22 = m20 & x4;
+        long m23 = m22 & x5;
+        long m24 = x1 & x2;
+        long m25 = m24 & x5;
+        long m26 = m24 & x4;
+        long m27 = m26 & x5;
+        long m33 = x0 & x5;
+        long m34 = x0 & x4;
+        long m35 = m34 & x5;
+        long m36 = x0 & x3;
+        long m38 = m36 & x4;
+        long m39 = m38 & x5;
+        long m40 = x0 & x2;
+        long m41 = m40 & x5;
+        long m42 = m40 & x4;
+        long m43 = m42 & x5;
+        long m44 = m40 & x3;
+        long m45 = m44 & x5;
+        long m46 = m44 & x4;
+        long m48 = x0 & x1;
+        long m49 = m48 & x5;
+        long m50 = m48 & x4;
+        long m51 = m50 & x5;
+        long m52 = m48 & x3;
+        long m53 = m52 & x5;
+        long m54 = m52 & x4;
+        long m55 = m54 & x5;
+        long m56 = m48 & x2;
+        long m57 = m56 & x5;
+        long m58 = m56 & x4;
+        long m59 = m58 & x5;
+        long m60 = m56 & x3;
+        long t0 = m35 ^ x0;
+        long t1 = m55 ^ x4;
+        long t2 = m59 ^ x3;
+        long t3 = m17 ^ m22;
+        long t4 = m20 ^ m24;
+        long t5 = m25 ^ m38;
+        long t6 = m39 ^ m43;
+        long t7 = m49 ^ m56;
+        long t8 = m51 ^ m57;
+        long t9 = m54 ^ t1;
+        long t10 = t0 ^ t3;
+        long t11 = t10 ^ t6;
+        long t12 = t11 ^ t8;
+        long t13 = t12 ^ x2;
+        long t14 = t4 ^ t9;
+        long t15 = t14 ^ x5;
+        long t16 = t5 ^ t7;
+        long t17 = m21 ^ m58;
+        long t18 = m7 ^ m9;
+        long t19 = t17 ^ t2;
+        long t20 = t19 ^ x1;
+        long t21 = m10 ^ m23;
+        long t22 = m40 ^ m42;
+        long t23 = m48 ^ m50;
+        long t24 = m53 ^ t21;
+        long t25 = t22 ^ t23;
+        long t26 = t24 ^ t25;
+        f[o0] = ~(m6 ^ t13 ^ t15 ^ t16);
+        f[o1] = ~(m15 ^ t15 ^ t18 ^ t20 ^ x0);
+        f[o2] = ~(m12 ^ m13 ^ m14 ^ m19 ^ m44 ^ m45 ^ m46 ^ m52 ^ m60 ^ t0 ^ t1 ^ t16 ^ t20 ^ t26);
+        f[o3] = ~(m26 ^ m27 ^ m33 ^ m41 ^ t13 ^ t18 ^ t2 ^ t26);
+    }
+
+    private static void s3(long x0, long x1, long x2, long x3, long x4, long x5,
+                           long[] f, int o0, int o1, int o2, int o3) {
+        long m5 = x3 & x5;
+        long m6 = x3 & x4;
+        long m7 = m6 & x5;
+        long m9 = x2 & x5;
+        long m10 = x2 & x4;
+        long m11 = m10 & x5;
+        long m12 = x2 & x3;
+        long m13 = m12 & x5;
+        long m14 = m12 & x4;
+        long m15 = m14 & x5;
+        long m17 = x1 & x5;
+        long m18 = x1 & x4;
+        long m19 = m18 & x5;
+        long m20 = x1 & x3;
+        long m21 = m20 & x5;
+        long m22 = m20 & x4;
+        long m23 = m22 & x5;
+        long m24 = x1 & x2;
+        long m25 = m24 & x5;
+        long m26 = m24 & x4;
+        long m27 = m26 & x5;
+        long m28 = m24 & x3;
+        long m29 = m28 & x5;
+        long m33 = x0 & x5;
+        long m34 = x0 & x4;
+        long m36 = x0 & x3;
+        long m37 = m36 & x5;
+        long m38 = m36 & x4;
+        long m39 = m38 & x5;
+        long m40 = x0 & x2;
+        long m42 = m40 & x4;
+        long m43 = m42 & x5;
+        long m44 = m40 & x3;
+        long m45 = m44 & x5;
+        long m46 = m44 & x4;
+        long m47 = m46 & x5;
+        long m48 = x0 & x1;
+        long m49 = m48 & x5;
+        long m50 = m48 & x4;
+        long m51 = m50 & x5;
+        long m52 = m48 & x3;
+        long m53 = m52 & x5;
+        long m54 = m52 & x4;
+        long m55 = m54 & x5;
+        long m56 = m48 & x2;
+        long m57 = m56 & x5;
+        long m58 = m56 & x4;
+        long m59 = m58 & x5;
+        long m60 = m56 & x3;
+        long m61 = m60 & x5;
+        long t0 = m10 ^ m20;
+        long t1 = m28 ^ m39;
+        long t2 = m33 ^ m37;
+        long t3 = m38 ^ t2;
+        long t4 = m47 ^ m5;
+        long t5 = m48 ^ m56;
+        long t6 = m52 ^ m60;
+        long t7 = m6 ^ t5;
+        long t8 = m7 ^ t0;
+        long t9 = t1 ^ t4;
+        long t10 = t3 ^ x1;
+        long t11 = t6 ^ t8;
+        long t12 = t11 ^ t9;
+        long t13 = m49 ^ m50;
+        long t14 = m51 ^ t13;
+        long t15 = t14 ^ x0;
+        long t16 = t15 ^ x5;
+        long t17 = m12 ^ m15;
+        long t18 = m22 ^ m36;
+        long t19 = m26 ^ m27;
+        long t20 = m40 ^ t10;
+        long t21 = m43 ^ m55;
+        long t22 = t12 ^ t17;
+        long t23 = t18 ^ t21;
+        long t24 = t19 ^ t7;
+        long t25 = t22 ^ t23;
+        long t26 = t24 ^ x2;
+        long t27 = t25 ^ x4;
+        long t28 = m18 ^ m19;
+        long t29 = m24 ^ m25;
+        long t30 = m57 ^ m58;
+        long t31 = t16 ^ t28;
+        long t32 = t29 ^ t31;
+        long t33 = m42 ^ m61;
+        long t34 = t33 ^ x3;
+        f[o0] = ~(m23 ^ m44 ^ m54 ^ t20 ^ t26 ^ t27);
+        f[o1] = m17 ^ m21 ^ m59 ^ t12 ^ t26 ^ t30 ^ t32;
+        f[o2] = ~(m11 ^ m13 ^ m14 ^ m29 ^ m45 ^ m53 ^ m9 ^ t10 ^ t27 ^ t32 ^ t34);
+        f[o3] = m10 ^ m34 ^ t16 ^ t20 ^ t30 ^ t34 ^ t7;
+    }
+
+    private static void s4(long x0, long x1, long x2, long x3, long x4, long x5,
+                           long[] f, int o0, int o1, int o2, int o3) {
+        long m3 = x4 & x5;
+        long m5 = x3 & x5;
+        long m6 = x3 & x4;
+        long m7 = m6 & x5;
+        long m9 = x2 & x5;
+        long m10 = x2 & x4;
+        long m12 = x2 & x3;
+        long m14 = m12 & x4;
+        long m15 = m14 & x5;
+        long m17 = x1 & x5;
+        long m18 = x1 & x4;
+        long m19 = m18 & x5;
+        long m20 = x1 & x3;
+        long m22 = m20 & x4;
+        long m23 = m22 & x5;
+        long m24 = x1 & x2;
+        long m25 = m24 & x5;
+        long m26 = m24 & x4;
+        long m27 = m26 & x5;
+        long m28 = m24 & x3;
+        long m29 = m28 & x5;
+        long m33 = x0 & x5;
+        long m34 = x0 & x4;
+        long m35 = m34 & x5;
+        long m36 = x0 & x3;
+        long m37 = m36 & x5;
+        long m38 = m36 & x4;
+        long m39 = m38 & x5;
+        long m40 = x0 & x2;
+        long m41 = m40 & x5;
+        long m42 = m40 & x4;
+        long m43 = m42 & x5;
+        long m44 = m40 & x3;
+        long m45 = m44 & x5;
+        long m46 = m44 & x4;
+        long m47 = m46 & x5;
+        long m48 = x0 & x1;
+        long m50 = m48 & x4;
+        long m51 = m50 & x5;
+        long m52 = m48 & x3;
+        long m54 = m52 & x4;
+        long m56 = m48 & x2;
+        long m57 = m56 & x5;
+        long m58 = m56 & x4;
+        long m59 = m58 & x5;
+        long m60 = m56 & x3;
+        long t0 = m17 ^ m19;
+        long t1 = m23 ^ m29;
+        long t2 = m3 ^ m35;
+        long t3 = m37 ^ m47;
+        long t4 = m5 ^ m52;
+        long t5 = m54 ^ m59;
+        long t6 = m60 ^ t0;
+        long t7 = t1 ^ t2;
+        long t8 = t3 ^ t4;
+        long t9 = t5 ^ t6;
+        long t10 = t7 ^ t8;
+        long t11 = t10 ^ t9;
+        long t12 = m24 ^ t11;
+        long t13 = t12 ^ x0;
+        long t14 = m42 ^ m6;
+        long t15 = t14 ^ x2;
+        long t16 = m10 ^ m27;
+        long t17 = m18 ^ m22;
+        long t18 = m36 ^ m46;
+        long t19 = m43 ^ m45;
+        long t20 = m50 ^ m58;
+        long t21 = m51 ^ m7;
+        long t22 = m9 ^ t13;
+        long t23 = t16 ^ t19;
+        long t24 = t17 ^ x3;
+        long t25 = t18 ^ t20;
+        long t26 = t21 ^ t22;
+        long t27 = t23 ^ t26;
+        long t28 = t25 ^ x4;
+        long t29 = t28 ^ x5;
+        long t30 = m28 ^ m34;
+        long t31 = t15 ^ t30;
+        long t32 = t31 ^ x1;
+        long t33 = m15 ^ m25;
+        long t34 = m33 ^ m39;
+        long t35 = m41 ^ m48;
+        long t36 = m57 ^ t33;
+        long t37 = t34 ^ t35;
+        long t38 = t36 ^ t37;
+        f[o0] = m26 ^ m44 ^ t24 ^ t27 ^ t29;
+        f[o1] = ~(t27 ^ t32);
+        f[o2] = ~(m14 ^ m38 ^ t11 ^ t29 ^ t32 ^ t38);
+        f[o3] = ~(m40 ^ m50 ^ m56 ^ t13 ^ t15 ^ t24 ^ t38);
+    }
+
+    private static void s5(long x0, long x1, long x2, long x3, long x4, long x5,
+                           long[] f, int o0, int o1, int o2, int o3) {
+        long m3 = x4 & x5;
+        long m5 = x3 & x5;
+        long m6 = x3 & x4;
+        long m9 = x2 & x5;
+        long m10 = x2 & x4;
+        long m11 = m10 & x5;
+        long m12 = x2 & x3;
+        long m13 = m12 & x5;
+        long m14 = m12 & x4;
+        long m15 = m14 & x5;
+        long m17 = x1 & x5;
+        long m18 = x1 & x4;
+        long m19 = m18 & x5;
+        long m20 = x1 & x3;
+        long m21 = m20 & x5;
+        long m22 = m20 & x4;
+        long m23 = m22 & x5;
+        long m24 = x1 & x2;
+        long m25 = m24 & x5;
+        long m26 = m24 & x4;
+        long m27 = m26 & x5;
+        long m28 = m24 & x3;
+        long m29 = m28 & x5;
+        long m33 = x0 & x5;
+        long m34 = x0 & x4;
+        long m35 = m34 & x5;
+        long m36 = x0 & x3;
+        long m37 = m36 & x5;
+        long m38 = m36 & x4;
+        long m39 = m38 & x5;
+        long m40 = x0 & x2;
+        long m41 = m40 & x5;
+        long m42 = m40 & x4;
+        long m43 = m42 & x5;
+        long m44 = m40 & x3;
+        long m45 = m44 & x5;
+        long m46 = m44 & x4;
+        long m47 = m46 & x5;
+        long m48 = x0 & x1;
+        long m49 = m48 & x5;
+        long m50 = m48 & x4;
+        long m51 = m50 & x5;
+        long m52 = m48 & x3;
+        long m53 = m52 & x5;
+        long m54 = m52 & x4;
+        long m55 = m54 & x5;
+        long m56 = m48 & x2;
+        long m57 = m56 & x5;
+        long m58 = m56 & x4;
+        long m59 = m58 & x5;
+        long m60 = m56 & x3;
+        long m61 = m60 & x5;
+        long t0 = m13 ^ m15;
+        long t1 = m46 ^ m60;
+        long t2 = m9 ^ t0;
+        long t3 = t1 ^ t2;
+        long t4 = m14 ^ m21;
+        long t5 = m20 ^ m57;
+        long t6 = m3 ^ m40;
+        long t7 = m35 ^ t3;
+        long t8 = m41 ^ m52;
+        long t9 = m6 ^ t4;
+        long t10 = t6 ^ t8;
+        long t11 = t10 ^ t9;
+        long t12 = t7 ^ x4;
+        long t13 = m38 ^ m49;
+        long t14 = m56 ^ t13;
+        long t15 = m12 ^ m22;
+        long t16 = m25 ^ m53;
+        long t17 = m27 ^ m5;
+        long t18 = m51 ^ m54;
+        long t19 = m55 ^ t11;
+        long t20 = t12 ^ t15;
+        long t21 = t16 ^ t5;
+        long t22 = t17 ^ t19;
+        long t23 = t20 ^ t22;
+        long t24 = t21 ^ x5;
+        long t25 = t23 ^ x1;
+        long t26 = m11 ^ t14;
+        long t27 = m29 ^ m61;
+        long t28 = t26 ^ x2;
+        long t29 = t27 ^ x0;
+        long t30 = t29 ^ x3;
+        long t31 = m10 ^ m18;
+        long t32 = m19 ^ m26;
+        long t33 = m33 ^ m36;
+        long t34 = m45 ^ m47;
+        long t35 = m50 ^ m59;
+        long t36 = t31 ^ t32;
+        long t37 = t33 ^ t34;
+        long t38 = t35 ^ t36;
+        long t39 = t37 ^ t38;
+        f[o0] = m34 ^ m37 ^ m43 ^ t18 ^ t24 ^ t25;
+        f[o1] = m39 ^ t12 ^ t24 ^ t28 ^ t30;
+        f[o2] = ~(m28 ^ m42 ^ m44 ^ t14 ^ t25 ^ t30 ^ t39);
+        f[o3] = m17 ^ m23 ^ m48 ^ m58 ^ t11 ^ t18 ^ t28 ^ t3 ^ t39 ^ t5;
+    }
+
+    private static void s6(long x0, long x1, long x2, long x3, long x4, long x5,
+                           long[] f, int o0, int o1, int o2, int o3) {
+        long m3 = x4 & x5;
+        long m5 = x3 & x5;
+        long m6 = x3 & x4;
+        long m7 = m6 & x5;
+        long m9 = x2 & x5;
+        long m10 = x2 & x4;
+        long m11 = m10 & x5;
+        long m12 = x2 & x3;
+        long m13 = m12 & x5;
+        long m14 = m12 & x4;
+        long m15 = m14 & x5;
+        long m18 = x1 & x4;
+        long m19 = m18 & x5;
+        long m20 = x1 & x3;
+        long m22 = m20 & x4;
+        long m23 = m22 & x5;
+        long m24 = x1 & x2;
+        long m26 = m24 & x4;
+        long m28 = m24 & x3;
+        long m29 = m28 & x5;
+        long m33 = x0 & x5;
+        long m34 = x0 & x4;
+        long m35 = m34 & x5;
+        long m36 = x0 & x3;
+        long m37 = m36 & x5;
+        long m38 = m36 & x4;
+        long m39 = m38 & x5;
+        long m40 = x0 & x2;
+        long m41 = m40 & x5;
+        long m42 = m40 & x4;
+        long m43 = m42 & x5;
+        long m44 = m40 & x3;
+        long m45 = m44 & x5;
+        long m46 = m44 & x4;
+        long m47 = m46 & x5;
+        long m48 = x0 & x1;
+        long m49 = m48 & x5;
+        long m52 = m48 & x3;
+        long m53 = m52 & x5;
+        long m54 = m52 & x4;
+        long m55 = m54 & x5;
+        long m56 = m48 & x2;
+        long m57 = m56 & x5;
+        long m58 = m56 & x4;
+        long m59 = m58 & x5;
+        long m60 = m56 & x3;
+        long m61 = m60 & x5;
+        long t0 = m14 ^ m39;
+        long t1 = m24 ^ m33;
+        long t2 = m40 ^ m41;
+        long t3 = m42 ^ m55;
+        long t4 = m43 ^ m59;
+        long t5 = m57 ^ t0;
+        long t6 = m7 ^ t1;
+        long t7 = t2 ^ t4;
+        long t8 = t3 ^ t6;
+        long t9 = t5 ^ x4;
+        long t10 = m12 ^ m13;
+        long t11 = m15 ^ m29;
+        long t12 = m34 ^ t7;
+        long t13 = m53 ^ t10;
+        long t14 = m61 ^ t9;
+        long t15 = t11 ^ t13;
+        long t16 = t12 ^ t8;
+        long t17 = t14 ^ x1;
+        long t18 = m10 ^ m54;
+        long t19 = m20 ^ m23;
+        long t20 = m38 ^ m46;
+        long t21 = m56 ^ t18;
+        long t22 = t19 ^ t20;
+        long t23 = t21 ^ x3;
+        long t24 = t22 ^ x0;
+        long t25 = t23 ^ x5;
+        long t26 = t24 ^ x2;
+        f[o0] = ~(m11 ^ m3 ^ m35 ^ m37 ^ m5 ^ m6 ^ m9 ^ t15 ^ t16 ^ t17);
+        f[o1] = ~(m58 ^ t17 ^ t25 ^ t26 ^ t7);
+        f[o2] = m19 ^ m22 ^ m26 ^ m39 ^ m48 ^ t16 ^ t25;
+        f[o3] = m28 ^ m44 ^ m45 ^ m47 ^ m49 ^ t15 ^ t26 ^ t8 ^ t9;
+    }
+
+    private static void s7(long x0, long x1, long x2, long x3, long x4, long x5,
+                           long[] f, int o0, int o1, int o2, int o3) {
+        long m3 = x4 & x5;
+        long m6 = x3 & x4;
+        long m7 = m6 & x5;
+        long m9 = x2 & x5;
+        long m12 = x2 & x3;
+        long m13 = m12 & x5;
+        long m14 = m12 & x4;
+        long m15 = m14 & x5;
+        long m17 = x1 & x5;
+        long m20 = x1 & x3;
+        long m21 = m20 & x5;
+        long m22 = m20 & x4;
+        long m23 = m22 & x5;
+        long m24 = x1 & x2;
+        long m25 = m24 & x5;
+        long m28 = m24 & x3;
+        long m29 = m28 & x5;
+        long m33 = x0 & x5;
+        long m34 = x0 & x4;
+        long m35 = m34 & x5;
+        long m36 = x0 & x3;
+        long m37 = m36 & x5;
+        long m38 = m36 & x4;
+        long m39 = m38 & x5;
+        long m40 = x0 & x2;
+        long m41 = m40 & x5;
+        long m42 = m40 & x4;
+        long m43 = m42 & x5;
+        long m44 = m40 & x3;
+        long m45 = m44 & x5;
+        long m46 = m44 & x4;
+        long m47 = m46 & x5;
+        long m48 = x0 & x1;
+        long m50 = m48 & x4;
+        long m51 = m50 & x5;
+        long m52 = m48 & x3;
+        long m53 = m52 & x5;
+        long m54 = m52 & x4;
+        long m55 = m54 & x5;
+        long m56 = m48 & x2;
+        long m57 = m56 & x5;
+        long m58 = m56 & x4;
+        long m59 = m58 & x5;
+        long m60 = m56 & x3;
+        long m61 = m60 & x5;
+        long t0 = m57 ^ x4;
+        long t1 = m15 ^ m33;
+        long t2 = m24 ^ t0;
+        long t3 = m47 ^ x2;
+        long t4 = m23 ^ x1;
+        long t5 = m14 ^ m39;
+        long t6 = m20 ^ m36;
+        long t7 = m29 ^ m34;
+        long t8 = m35 ^ m42;
+        long t9 = m46 ^ m48;
+        long t10 = m52 ^ m54;
+        long t11 = m56 ^ m58;
+        long t12 = m60 ^ t1;
+        long t13 = m61 ^ t10;
+        long t14 = t11 ^ t13;
+        long t15 = t12 ^ t2;
+        long t16 = t14 ^ t3;
+        long t17 = t15 ^ t6;
+        long t18 = t16 ^ t7;
+        long t19 = t17 ^ t9;
+        long t20 = t18 ^ t8;
+        long t21 = t5 ^ x5;
+        long t22 = m40 ^ t4;
+        long t23 = m53 ^ x0;
+        long t24 = t22 ^ x3;
+        long t25 = m45 ^ m6;
+        f[o0] = m25 ^ m28 ^ m41 ^ t19 ^ t20 ^ t21;
+        f[o1] = ~(m17 ^ m55 ^ t19 ^ t23 ^ t24);
+        f[o2] = m13 ^ m22 ^ m3 ^ m43 ^ m59 ^ m7 ^ m9 ^ t0 ^ t1 ^ t20 ^ t24 ^ t25;
+        f[o3] = m12 ^ m21 ^ m37 ^ m51 ^ t2 ^ t21 ^ t23 ^ t25 ^ t3 ^ t4;
+    }
+
+    private static void s8(long x0, long x1, long x2, long x3, long x4, long x5,
+                           long[] f, int o0, int o1, int o2, int o3) {
+        long m3 = x4 & x5;
+        long m5 = x3 & x5;
+        long m6 = x3 & x4;
+        long m7 = m6 & x5;
+        long m10 = x2 & x4;
+        long m11 = m10 & x5;
+        long m12 = x2 & x3;
+        long m13 = m12 & x5;
+        long m14 = m12 & x4;
+        long m15 = m14 & x5;
+        long m17 = x1 & x5;
+        long m18 = x1 & x4;
+        long m19 = m18 & x5;
+        long m20 = x1 & x3;
+        long m21 = m20 & x5;
+        long m22 = m20 & x4;
+        long m23 = m22 & x5;
+        long m24 = x1 & x2;
+        long m25 = m24 & x5;
+        long m28 = m24 & x3;
+        long m29 = m28 & x5;
+        long m33 = x0 & x5;
+        long m34 = x0 & x4;
+        long m35 = m34 & x5;
+        long m36 = x0 & x3;
+        long m37 = m36 & x5;
+        long m38 = m36 & x4;
+        long m39 = m38 & x5;
+        long m40 = x0 & x2;
+        long m41 = m40 & x5;
+        long m42 = m40 & x4;
+        long m43 = m42 & x5;
+        long m44 = m40 & x3;
+        long m45 = m44 & x5;
+        long m48 = x0 & x1;
+        long m50 = m48 & x4;
+        long m51 = m50 & x5;
+        long m52 = m48 & x3;
+        long m53 = m52 & x5;
+        long m54 = m52 & x4;
+        long m55 = m54 & x5;
+        long m56 = m48 & x2;
+        long m57 = m56 & x5;
+        long m58 = m56 & x4;
+        long m59 = m58 & x5;
+        long m60 = m56 & x3;
+        long m61 = m60 & x5;
+        long t0 = m42 ^ x4;
+        long t1 = m19 ^ m39;
+        long t2 = m22 ^ m45;
+        long t3 = m35 ^ t0;
+        long t4 = m59 ^ t1;
+        long t5 = m61 ^ t2;
+        long t6 = t4 ^ x2;
+        long t7 = m13 ^ m33;
+        long t8 = m17 ^ m21;
+        long t9 = m18 ^ m20;
+        long t10 = m29 ^ m38;
+        long t11 = m44 ^ m60;
+        long t12 = m5 ^ m53;
+        long t13 = m55 ^ t10;
+        long t14 = t11 ^ t3;
+        long t15 = t12 ^ t5;
+        long t16 = t13 ^ t6;
+        long t17 = t14 ^ t9;
+        long t18 = t15 ^ t7;
+        long t19 = t16 ^ t8;
+        long t20 = t17 ^ x5;
+        long t21 = t19 ^ x0;
+        long t22 = m10 ^ m36;
+        long t23 = m37 ^ m50;
+        long t24 = m40 ^ m43;
+        long t25 = m52 ^ m54;
+        long t26 = m56 ^ t24;
+        long t27 = t22 ^ t23;
+        long t28 = t25 ^ t26;
+        long t29 = t27 ^ x1;
+        long t30 = t28 ^ x3;
+        long t31 = m25 ^ m34;
+        long t32 = m58 ^ m6;
+        long t33 = t31 ^ t32;
+        f[o0] = ~(m12 ^ m28 ^ m41 ^ m57 ^ m7 ^ t18 ^ t20 ^ t21);
+        f[o1] = ~(m24 ^ t20 ^ t29 ^ t30 ^ t5);
+        f[o2] = m23 ^ t21 ^ t29 ^ t3 ^ t33;
+        f[o3] = ~(m11 ^ m15 ^ m3 ^ m51 ^ t0 ^ t18 ^ t30 ^ t33 ^ t6 ^ x1);
+    }
+}
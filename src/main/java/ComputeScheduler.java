@@ -0,0 +1,134 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * CPU-sized pool shared by all chain work (generation, lookups) of the tables using it, so that concurrent
+ * queries divide the cores between them instead of each starting its own pool. A job is split into chunks,
+ * which at most maxParallelism workers claim in order, one chunk at a time -- a job cannot take more than its
+ * share of the pool and its cheapest chunks (the lowest numbers) are done first.
+ * Queries are admitted in arrival order: at most maxRunningQueries run at once, at most maxQueuedQueries wait.
+ */
+public class ComputeScheduler {
+    private final static int DEFAULT_MAX_QUEUED_QUERIES = 1024;
+
+    private static ComputeScheduler shared;
+
+    public interface ChunkAction {
+        void run(long chunk);
+    }
+
+    // Held while a query runs, released by close
+    public interface Admission extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private final ForkJoinPool pool;
+    private final Semaphore running;
+    private final int maxQueuedQueries;
+    private final AtomicInteger queued = new AtomicInteger();
+
+    public ComputeScheduler(int parallelism) {
+        this(parallelism, parallelism, DEFAULT_MAX_QUEUED_QUERIES);
+    }
+
+    public ComputeScheduler(int parallelism, int maxRunningQueries, int maxQueuedQueries) {
+        this.pool = new ForkJoinPool(parallelism); // daemon workers, an idle scheduler does not keep the JVM alive
+        this.running = new Semaphore(maxRunningQueries, true);
+        this.maxQueuedQueries = maxQueuedQueries;
+    }
+
+    // Scheduler of tables which were not given one, sized to the available cores
+    public static synchronized ComputeScheduler shared() {
+        if (shared == null) {
+            shared = new ComputeScheduler(Runtime.getRuntime().availableProcessors());
+        }
+        return shared;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Runs action for chunks 0 .. nChunks - 1 with at most maxParallelism workers and returns when all of them are done.
+     * No further chunks are started once cancelled returns true. On a timeout or an interrupt the caller has to
+     * cancel the chunks still running itself (e.g. through the flag polled by cancelled).
+     */
+    public void runChunks(long nChunks, int maxParallelism, BooleanSupplier cancelled, ChunkAction action, long timeout, TimeUnit unit)
+            throws InterruptedException, TimeoutException {
+        AtomicLong nextChunk = new AtomicLong();
+        int nWorkers = (int) Math.min(nChunks, Math.min(maxParallelism, getParallelism()));
+        List<ForkJoinTask<?>> workers = new ArrayList<>(nWorkers);
+
+        for (int i = 0; i < nWorkers; i++) {
+            workers.add(pool.submit(() -> {
+                for (long chunk = nextChunk.getAndIncrement(); chunk < nChunks && !cancelled.getAsBoolean();
+                     chunk = nextChunk.getAndIncrement()) {
+                    action.run(chunk);
+                }
+            }));
+        }
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ForkJoinTask<?> worker : workers) {
+            try {
+                worker.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+    }
+
+    public void runChunks(long nChunks, int maxParallelism, ChunkAction action) throws InterruptedException {
+        try {
+            runChunks(nChunks, maxParallelism, () -> false, action, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Waits for a free query slot. Throws RejectedExecutionException at once if maxQueuedQueries queries are waiting
+     * already, so that an overloaded caller can refuse the query instead of queueing it without bound.
+     */
+    public Admission admit() throws InterruptedException {
+        if (!running.tryAcquire()) {
+            if (queued.incrementAndGet() > maxQueuedQueries) {
+                queued.decrementAndGet();
+                throw new RejectedExecutionException("Przekroczono limit oczekujących zapytań: " + maxQueuedQueries);
+            }
+            try {
+                running.acquire();
+            } finally {
+                queued.decrementAndGet();
+            }
+        }
+        return running::release;
+    }
+
+    /**
+     * Executor for the threads which wait for queries (e.g. connections of LookupServer): a virtual thread per query on
+     * a JDK which has them, otherwise a platform thread per query. Either way every query reaches admit at once and
+     * is refused there if the queue is full; at most maxRunningQueries + maxQueuedQueries of these threads live longer
+     * than that, and they only wait on admit and on the compute pool, so they add no CPU contention.
+     */
+    public ExecutorService newQueryExecutor() {
+        try {
+            Method virtualThreadExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtualThreadExecutor.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            // JDK without virtual threads (or with them disabled as a preview feature)
+        }
+
+        return Executors.newCachedThreadPool();
+    }
+}
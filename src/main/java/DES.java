@@ -1,72 +1,47 @@
-import javax.crypto.*;
-import javax.crypto.spec.SecretKeySpec;
 import java.util.Random;
 
 public class DES {
     public static final int KEY_LENGTH = 8;
-    private static final String ALG_MODE_PADDING = "DES/ECB/PKCS5Padding";
     public static final String DES_KEY_CHARSET = "0123456789";
 
-    private Cipher encryptor, decryptor;
+    // Pure-Java engines working on long blocks, no JCE provider overhead and no allocation per key/block
+    private final DESEngine encryptor, decryptor;
 
     public DES() {
-        try {
-            encryptor = Cipher.getInstance(ALG_MODE_PADDING);
-            decryptor = Cipher.getInstance(ALG_MODE_PADDING);
-        } catch (Exception e) {
-            System.err.println("Błąd podczas inicjowania algorytmu DES");
-        }
+        encryptor = new DESEngine();
+        decryptor = new DESEngine();
     }
 
     public void initializeEncryptor(String key) {
         validateKey(key);
-
-        try {
-            encryptor.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key.getBytes(), "DES"));
-        } catch (Exception e) {
-            System.err.println("Błąd podczas inicjowania szyfratora kluczem");
-        }
+        encryptor.setKey(DESEngine.toLong(key.getBytes(), 0));
     }
 
     public void initializeEncryptor(byte[] key) {
         validateKey(key);
-
-        try {
-            encryptor.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "DES"));
-        } catch (Exception e) {
-            System.err.println("Błąd podczas inicjowania szyfratora kluczem");
-        }
+        encryptor.setKey(DESEngine.toLong(key, 0));
     }
 
     public void initializeDecryptor(String key) {
         validateKey(key);
-
-        try {
-            decryptor.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key.getBytes(), "DES"));
-        } catch (Exception e) {
-            System.err.println("Błąd podczas inicjowania deszyfratora kluczem");
-        }
+        decryptor.setKey(DESEngine.toLong(key.getBytes(), 0));
     }
 
     public void initializeDecryptor(byte[] key) {
         validateKey(key);
-
-        try {
-            decryptor.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "DES"));
-        } catch (Exception e) {
-            System.err.println("Błąd podczas inicjowania deszyfratora kluczem");
-        }
+        decryptor.setKey(DESEngine.toLong(key, 0));
     }
 
     private void validateKey(String key) {
         if (key == null) {
             throw new IllegalArgumentException("Klucz nie może być pusty");
         }
-        if (!key.matches("^\\d{" + KEY_LENGTH + "}$")) {
-            throw new IllegalArgumentException("Klucz musi mieć długość dokładnie " + KEY_LENGTH + " bajtów (składać się z " + KEY_LENGTH + " cyfr). Aktualny klucz: " + key);
+        if (key.getBytes().length != KEY_LENGTH) {
+            throw new IllegalArgumentException("Klucz musi mieć długość dokładnie " + KEY_LENGTH + " bajtów. Aktualny klucz: " + key);
         }
     }
 
+    // Any bytes make a DES key, which characters keys may use is decided by the key space of a table
     private void validateKey(byte[] key) {
         if (key == null) {
             throw new IllegalArgumentException("Klucz nie może być pusty");
@@ -74,38 +49,63 @@ public class DES {
         if (key.length != KEY_LENGTH) {
             throw new IllegalArgumentException("Klucz musi mieć długość " + KEY_LENGTH + " bajtów");
         }
-
-        for (byte b : key) {
-            if (b < 48 || b > 57) {
-                throw new IllegalArgumentException("Klucz musi składać się z samych cyfr. Aktualny klucz: " + new String(key));
-            }
-        }
     }
 
     public String encrypt(String plainText) {
-        String hexCipherText = null;
-
-        try {
-            hexCipherText = Hex.toHex(encryptor.doFinal(plainText.getBytes()));
-        } catch (Exception e) {
-            System.err.println("Nie udało się zaszyfrować");
-            System.exit(-1);
-        }
+        long[] blocks = toBlocks(plainText);
+        encryptor.encrypt(blocks, blocks);
+        return Hex.toHex(blocks);
+    }
 
-        return hexCipherText;
+    // Hot path: plaintext already padded and split into blocks (see toBlocks), output written into the given array
+    public void encrypt(long[] plainBlocks, long[] cipherBlocks) {
+        encryptor.encrypt(plainBlocks, cipherBlocks);
     }
 
     public String decrypt(String cipherText) {
-        String hexPlainText = null;
+        byte[] bytes = Hex.hexStringToByteArray(cipherText);
+
+        if (bytes.length == 0 || bytes.length % DESEngine.BLOCK_SIZE != 0) {
+            System.err.println("Nie udało się zdeszyfrować");
+            System.exit(-1);
+        }
+
+        for (int i = 0; i < bytes.length; i += DESEngine.BLOCK_SIZE) {
+            DESEngine.toBytes(decryptor.decrypt(DESEngine.toLong(bytes, i)), bytes, i);
+        }
 
-        try {
-            hexPlainText = Hex.toHex(decryptor.doFinal(Hex.hexStringToByteArray(cipherText)));
-        } catch (Exception e) {
+        // Strip PKCS5 padding
+        int padding = bytes[bytes.length - 1];
+        boolean paddingValid = padding >= 1 && padding <= DESEngine.BLOCK_SIZE;
+        for (int i = 1; paddingValid && i <= padding; i++) {
+            paddingValid = bytes[bytes.length - i] == padding;
+        }
+        if (!paddingValid) {
             System.err.println("Nie udało się zdeszyfrować");
             System.exit(-1);
         }
 
-        return hexPlainText;
+        byte[] plainBytes = new byte[bytes.length - padding];
+        System.arraycopy(bytes, 0, plainBytes, 0, plainBytes.length);
+        return Hex.toHex(plainBytes);
+    }
+
+    // Splits plaintext into DES blocks with PKCS5 padding, the same way DES/ECB/PKCS5Padding does
+    public static long[] toBlocks(String plainText) {
+        byte[] bytes = plainText.getBytes();
+        int padding = DESEngine.BLOCK_SIZE - bytes.length % DESEngine.BLOCK_SIZE;
+        byte[] padded = new byte[bytes.length + padding];
+
+        System.arraycopy(bytes, 0, padded, 0, bytes.length);
+        for (int i = bytes.length; i < padded.length; i++) {
+            padded[i] = (byte) padding;
+        }
+
+        long[] blocks = new long[padded.length / DESEngine.BLOCK_SIZE];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = DESEngine.toLong(padded, i * DESEngine.BLOCK_SIZE);
+        }
+        return blocks;
     }
 
     public static String generateRandomKey() {
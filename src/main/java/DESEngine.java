@@ -0,0 +1,209 @@
+public class DESEngine {
+    public static final int BLOCK_SIZE = 8;
+    private static final int ROUNDS = 16;
+
+    // Standard DES tables, bits numbered from 1 starting at the most significant bit
+    private static final int[] IP = {
+            58, 50, 42, 34, 26, 18, 10, 2, 60, 52, 44, 36, 28, 20, 12, 4,
+            62, 54, 46, 38, 30, 22, 14, 6, 64, 56, 48, 40, 32, 24, 16, 8,
+            57, 49, 41, 33, 25, 17, 9, 1, 59, 51, 43, 35, 27, 19, 11, 3,
+            61, 53, 45, 37, 29, 21, 13, 5, 63, 55, 47, 39, 31, 23, 15, 7
+    };
+    private static final int[] FP = {
+            40, 8, 48, 16, 56, 24, 64, 32, 39, 7, 47, 15, 55, 23, 63, 31,
+            38, 6, 46, 14, 54, 22, 62, 30, 37, 5, 45, 13, 53, 21, 61, 29,
+            36, 4, 44, 12, 52, 20, 60, 28, 35, 3, 43, 11, 51, 19, 59, 27,
+            34, 2, 42, 10, 50, 18, 58, 26, 33, 1, 41, 9, 49, 17, 57, 25
+    };
+    private static final int[] P = {
+            16, 7, 20, 21, 29, 12, 28, 17, 1, 15, 23, 26, 5, 18, 31, 10,
+            2, 8, 24, 14, 32, 27, 3, 9, 19, 13, 30, 6, 22, 11, 4, 25
+    };
+    private static final int[] PC1 = {
+            57, 49, 41, 33, 25, 17, 9, 1, 58, 50, 42, 34, 26, 18,
+            10, 2, 59, 51, 43, 35, 27, 19, 11, 3, 60, 52, 44, 36,
+            63, 55, 47, 39, 31, 23, 15, 7, 62, 54, 46, 38, 30, 22,
+            14, 6, 61, 53, 45, 37, 29, 21, 13, 5, 28, 20, 12, 4
+    };
+    private static final int[] PC2 = {
+            14, 17, 11, 24, 1, 5, 3, 28, 15, 6, 21, 10,
+            23, 19, 12, 4, 26, 8, 16, 7, 27, 20, 13, 2,
+            41, 52, 31, 37, 47, 55, 30, 40, 51, 45, 33, 48,
+            44, 49, 39, 56, 34, 53, 46, 42, 50, 36, 29, 32
+    };
+    private static final int[] SHIFTS = {1, 1, 2, 2, 2, 2, 2, 2, 1, 2, 2, 2, 2, 2, 2, 1};
+    static final int[][] S = {
+            {14, 4, 13, 1, 2, 15, 11, 8, 3, 10, 6, 12, 5, 9, 0, 7,
+                    0, 15, 7, 4, 14, 2, 13, 1, 10, 6, 12, 11, 9, 5, 3, 8,
+                    4, 1, 14, 8, 13, 6, 2, 11, 15, 12, 9, 7, 3, 10, 5, 0,
+                    15, 12, 8, 2, 4, 9, 1, 7, 5, 11, 3, 14, 10, 0, 6, 13},
+            {15, 1, 8, 14, 6, 11, 3, 4, 9, 7, 2, 13, 12, 0, 5, 10,
+                    3, 13, 4, 7, 15, 2, 8, 14, 12, 0, 1, 10, 6, 9, 11, 5,
+                    0, 14, 7, 11, 10, 4, 13, 1, 5, 8, 12, 6, 9, 3, 2, 15,
+                    13, 8, 10, 1, 3, 15, 4, 2, 11, 6, 7, 12, 0, 5, 14, 9},
+            {10, 0, 9, 14, 6, 3, 15, 5, 1, 13, 12, 7, 11, 4, 2, 8,
+                    13, 7, 0, 9, 3, 4, 6, 10, 2, 8, 5, 14, 12, 11, 15, 1,
+                    13, 6, 4, 9, 8, 15, 3, 0, 11, 1, 2, 12, 5, 10, 14, 7,
+                    1, 10, 13, 0, 6, 9, 8, 7, 4, 15, 14, 3, 11, 5, 2, 12},
+            {7, 13, 14, 3, 0, 6, 9, 10, 1, 2, 8, 5, 11, 12, 4, 15,
+                    13, 8, 11, 5, 6, 15, 0, 3, 4, 7, 2, 12, 1, 10, 14, 9,
+                    10, 6, 9, 0, 12, 11, 7, 13, 15, 1, 3, 14, 5, 2, 8, 4,
+                    3, 15, 0, 6, 10, 1, 13, 8, 9, 4, 5, 11, 12, 7, 2, 14},
+            {2, 12, 4, 1, 7, 10, 11, 6, 8, 5, 3, 15, 13, 0, 14, 9,
+                    14, 11, 2, 12, 4, 7, 13, 1, 5, 0, 15, 10, 3, 9, 8, 6,
+                    4, 2, 1, 11, 10, 13, 7, 8, 15, 9, 12, 5, 6, 3, 0, 14,
+                    11, 8, 12, 7, 1, 14, 2, 13, 6, 15, 0, 9, 10, 4, 5, 3},
+            {12, 1, 10, 15, 9, 2, 6, 8, 0, 13, 3, 4, 14, 7, 5, 11,
+                    10, 15, 4, 2, 7, 12, 9, 5, 6, 1, 13, 14, 0, 11, 3, 8,
+                    9, 14, 15, 5, 2, 8, 12, 3, 7, 0, 4, 10, 1, 13, 11, 6,
+                    4, 3, 2, 12, 9, 5, 15, 10, 11, 14, 1, 7, 6, 0, 8, 13},
+            {4, 11, 2, 14, 15, 0, 8, 13, 3, 12, 9, 7, 5, 10, 6, 1,
+                    13, 0, 11, 7, 4, 9, 1, 10, 14, 3, 5, 12, 2, 15, 8, 6,
+                    1, 4, 11, 13, 12, 3, 7, 14, 10, 15, 6, 8, 0, 5, 9, 2,
+                    6, 11, 13, 8, 1, 4, 10, 7, 9, 5, 0, 15, 14, 2, 3, 12},
+            {13, 2, 8, 4, 6, 15, 11, 1, 10, 9, 3, 14, 5, 0, 12, 7,
+                    1, 15, 13, 8, 10, 3, 7, 4, 12, 5, 6, 11, 0, 14, 9, 2,
+                    7, 11, 4, 1, 9, 12, 14, 2, 0, 6, 10, 13, 15, 3, 5, 8,
+                    2, 1, 14, 7, 4, 10, 8, 13, 15, 12, 9, 0, 3, 5, 6, 11}
+    };
+
+    // Precomputed tables -- every permutation is replaced by one lookup per input byte
+    private static final long[] IP_TABLE = new long[8 * 256];
+    private static final long[] FP_TABLE = new long[8 * 256];
+    private static final int[] SP_TABLE = new int[8 * 64]; // S-box followed by P, indexed by the 6-bit S-box input
+    // Contribution of every key byte (parity bit dropped) to all 16 subkeys, the key schedule is linear in key bits
+    private static final long[] KEY_TABLE = new long[8 * 128 * ROUNDS];
+
+    static {
+        for (int p = 0; p < 8; p++) {
+            for (int v = 0; v < 256; v++) {
+                long in = (long) v << (56 - 8 * p);
+                IP_TABLE[p * 256 + v] = permute(in, 64, IP);
+                FP_TABLE[p * 256 + v] = permute(in, 64, FP);
+            }
+        }
+
+        for (int j = 0; j < 8; j++) {
+            for (int v = 0; v < 64; v++) {
+                int row = ((v >>> 4) & 2) | (v & 1);
+                int column = (v >>> 1) & 0xF;
+                long sOut = (long) S[j][row * 16 + column] << (28 - 4 * j);
+                SP_TABLE[j * 64 + v] = (int) permute(sOut, 32, P);
+            }
+        }
+
+        long[] subkeys = new long[ROUNDS];
+        for (int p = 0; p < 8; p++) {
+            for (int v = 0; v < 128; v++) {
+                computeSubkeys((long) (v << 1) << (56 - 8 * p), subkeys);
+                System.arraycopy(subkeys, 0, KEY_TABLE, (p * 128 + v) * ROUNDS, ROUNDS);
+            }
+        }
+    }
+
+    private final long[] subkeys = new long[ROUNDS];
+
+    public void setKey(long key) {
+        long[] k = subkeys;
+        for (int r = 0; r < ROUNDS; r++) {
+            k[r] = 0;
+        }
+
+        for (int p = 0; p < 8; p++) {
+            int base = (p * 128 + (int) ((key >>> (57 - 8 * p)) & 0x7F)) * ROUNDS;
+            for (int r = 0; r < ROUNDS; r++) {
+                k[r] ^= KEY_TABLE[base + r];
+            }
+        }
+    }
+
+    public long encrypt(long block) {
+        long x = permute(block, IP_TABLE);
+        int l = (int) (x >>> 32), r = (int) x, t;
+
+        for (int i = 0; i < ROUNDS; i++) {
+            t = l ^ f(r, subkeys[i]);
+            l = r;
+            r = t;
+        }
+
+        return permute(((long) r << 32) | (l & 0xFFFFFFFFL), FP_TABLE);
+    }
+
+    public long decrypt(long block) {
+        long x = permute(block, IP_TABLE);
+        int l = (int) (x >>> 32), r = (int) x, t;
+
+        for (int i = ROUNDS - 1; i >= 0; i--) {
+            t = l ^ f(r, subkeys[i]);
+            l = r;
+            r = t;
+        }
+
+        return permute(((long) r << 32) | (l & 0xFFFFFFFFL), FP_TABLE);
+    }
+
+    public void encrypt(long[] in, long[] out) {
+        for (int i = 0; i < in.length; i++) {
+            out[i] = encrypt(in[i]);
+        }
+    }
+
+    private static int f(int r, long k) {
+        // Each 6-bit chunk of the E expansion is a rotation of R, so E itself is never materialised
+        return SP_TABLE[(Integer.rotateRight(r, 27) ^ (int) (k >>> 42)) & 0x3F]
+                | SP_TABLE[64 + ((Integer.rotateRight(r, 23) ^ (int) (k >>> 36)) & 0x3F)]
+                | SP_TABLE[128 + ((Integer.rotateRight(r, 19) ^ (int) (k >>> 30)) & 0x3F)]
+                | SP_TABLE[192 + ((Integer.rotateRight(r, 15) ^ (int) (k >>> 24)) & 0x3F)]
+                | SP_TABLE[256 + ((Integer.rotateRight(r, 11) ^ (int) (k >>> 18)) & 0x3F)]
+                | SP_TABLE[320 + ((Integer.rotateRight(r, 7) ^ (int) (k >>> 12)) & 0x3F)]
+                | SP_TABLE[384 + ((Integer.rotateRight(r, 3) ^ (int) (k >>> 6)) & 0x3F)]
+                | SP_TABLE[448 + ((Integer.rotateLeft(r, 1) ^ (int) k) & 0x3F)];
+    }
+
+    private static long permute(long x, long[] table) {
+        return table[(int) (x >>> 56)]
+                | table[256 + (int) ((x >>> 48) & 0xFF)]
+                | table[512 + (int) ((x >>> 40) & 0xFF)]
+                | table[768 + (int) ((x >>> 32) & 0xFF)]
+                | table[1024 + (int) ((x >>> 24) & 0xFF)]
+                | table[1280 + (int) ((x >>> 16) & 0xFF)]
+                | table[1536 + (int) ((x >>> 8) & 0xFF)]
+                | table[1792 + (int) (x & 0xFF)];
+    }
+
+    // Reference bit-by-bit permutation, used only to build the tables above
+    private static long permute(long in, int inBits, int[] table) {
+        long out = 0;
+        for (int bit : table) {
+            out = (out << 1) | ((in >>> (inBits - bit)) & 1);
+        }
+        return out;
+    }
+
+    static void computeSubkeys(long key, long[] subkeys) {
+        long cd = permute(key, 64, PC1);
+        int c = (int) (cd >>> 28), d = (int) (cd & 0xFFFFFFF);
+
+        for (int r = 0; r < ROUNDS; r++) {
+            c = ((c << SHIFTS[r]) | (c >>> (28 - SHIFTS[r]))) & 0xFFFFFFF;
+            d = ((d << SHIFTS[r]) | (d >>> (28 - SHIFTS[r]))) & 0xFFFFFFF;
+            subkeys[r] = permute(((long) c << 28) | d, 56, PC2);
+        }
+    }
+
+    public static long toLong(byte[] bytes, int offset) {
+        long x = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            x = (x << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return x;
+    }
+
+    public static void toBytes(long x, byte[] bytes, int offset) {
+        for (int i = BLOCK_SIZE - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) x;
+            x >>>= 8;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Progress of a table generation kept on disk: segments of generated records (in start key order) and a checkpoint
+ * file with the start key counter from which the workers continue. A segment counts only after the checkpoint
+ * listing it has been written, so a crash loses at most the segment in progress.
+ */
+public class GenerationCheckpoint {
+    private static final String CHECKPOINT_FILE = "checkpoint.properties";
+
+    public interface RecordConsumer {
+        void accept(long record) throws IOException;
+    }
+
+    private final File directory;
+    private final Properties parameters; // generation parameters, a resumed run has to use the same ones
+    private int nSegments;
+    private long nextStartKey;
+    private long generatedLinks;
+
+    private GenerationCheckpoint(File directory, Properties parameters) {
+        this.directory = directory;
+        this.parameters = parameters;
+    }
+
+    public static GenerationCheckpoint create(File directory, Properties parameters) throws IOException {
+        if (new File(directory, CHECKPOINT_FILE).exists()) {
+            throw new IOException("Katalog " + directory + " zawiera niedokończone generowanie. "
+                    + "Użyj opcji --resume, aby je wznowić, albo usuń katalog, aby zacząć od nowa");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Nie udało się utworzyć katalogu " + directory);
+        }
+
+        GenerationCheckpoint checkpoint = new GenerationCheckpoint(directory, parameters);
+        checkpoint.write();
+        return checkpoint;
+    }
+
+    public static GenerationCheckpoint resume(File directory, Properties parameters) throws IOException {
+        File file = new File(directory, CHECKPOINT_FILE);
+        if (!file.exists()) {
+            throw new IOException("Brak punktu kontrolnego do wznowienia w katalogu " + directory);
+        }
+
+        Properties saved = new Properties();
+        try (InputStream in = new FileInputStream(file)) {
+            saved.load(in); // store(OutputStream) writes ISO 8859-1 with escapes, the same encoding has to be read back
+        }
+
+        for (String name : parameters.stringPropertyNames()) {
+            if (!parameters.getProperty(name).equals(saved.getProperty(name))) {
+                throw new IOException("Parametr " + name + " różni się od zapisanego w punkcie kontrolnym: "
+                        + parameters.getProperty(name) + " zamiast " + saved.getProperty(name));
+            }
+        }
+
+        GenerationCheckpoint checkpoint = new GenerationCheckpoint(directory, parameters);
+        checkpoint.nSegments = Integer.parseInt(saved.getProperty("segments"));
+        checkpoint.nextStartKey = Long.parseLong(saved.getProperty("nextStartKey"));
+        checkpoint.generatedLinks = Long.parseLong(saved.getProperty("generatedLinks"));
+        return checkpoint;
+    }
+
+    public long getNextStartKey() {
+        return nextStartKey;
+    }
+
+    public long getGeneratedLinks() {
+        return generatedLinks;
+    }
+
+    // Passes the records of all saved segments, in the order they were generated
+    public void replay(RecordConsumer consumer) throws IOException {
+        for (int i = 0; i < nSegments; i++) {
+            File segment = segmentFile(i);
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment)))) {
+                for (long n = segment.length() / Long.BYTES; n > 0; n--) {
+                    consumer.accept(in.readLong());
+                }
+            }
+        }
+    }
+
+    public void addSegment(long[] records, long nextStartKey, long generatedLinks) throws IOException {
+        try (FileOutputStream file = new FileOutputStream(segmentFile(nSegments));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            for (long record : records) {
+                out.writeLong(record);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+
+        nSegments++;
+        this.nextStartKey = nextStartKey;
+        this.generatedLinks = generatedLinks;
+        write();
+    }
+
+    // Called once the table has been saved
+    public void delete() {
+        for (int i = 0; i < nSegments; i++) {
+            segmentFile(i).delete();
+        }
+        new File(directory, CHECKPOINT_FILE).delete();
+        directory.delete();
+    }
+
+    private File segmentFile(int i) {
+        return new File(directory, String.format("segment-%06d.bin", i));
+    }
+
+    // Replaces the checkpoint file atomically, so that it is never seen half-written
+    private void write() throws IOException {
+        Properties properties = new Properties();
+        properties.putAll(parameters);
+        properties.setProperty("segments", Integer.toString(nSegments));
+        properties.setProperty("nextStartKey", Long.toString(nextStartKey));
+        properties.setProperty("generatedLinks", Long.toString(generatedLinks));
+
+        File temporary = new File(directory, CHECKPOINT_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary)) {
+            properties.store(file, "Punkt kontrolny generowania tablicy");
+            file.getFD().sync();
+        }
+        Files.move(temporary.toPath(), new File(directory, CHECKPOINT_FILE).toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+}
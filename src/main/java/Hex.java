@@ -13,6 +13,36 @@ public class Hex {
         return new String(hexChars);
     }
 
+    public static String toHex(long[] blocks) {
+        return toHex(blocks, 0, blocks.length);
+    }
+
+    public static String toHex(long[] blocks, int offset, int length) {
+        char[] hexChars = new char[length * 16];
+
+        for (int i = 0; i < length; i++) {
+            for (int j = 0; j < 16; j++) {
+                hexChars[i * 16 + j] = hexArray[(int) (blocks[offset + i] >>> (60 - 4 * j)) & 0x0F];
+            }
+        }
+
+        return new String(hexChars);
+    }
+
+    public static long[] hexStringToBlocks(String hex) {
+        // Trailing characters which do not form a whole 64-bit block are ignored
+        long[] blocks = new long[hex.length() / 16];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = Long.parseUnsignedLong(hex.substring(i * 16, i * 16 + 16), 16);
+        }
+        return blocks;
+    }
+
+    // True if hex is a non-empty sequence of whole 64-bit blocks, e.g. a cryptogram
+    public static boolean isHexBlocks(String hex) {
+        return hex.matches("^([0-9a-fA-F]{16})+$");
+    }
+
     public static byte[] hexStringToByteArray(String hex) {
         int len = hex.length();
         byte[] bytes = new byte[len / 2];
@@ -0,0 +1,252 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a table set loaded and answers lookups over HTTP, listening on the loopback interface only:
+ * GET /lookup?c=cryptogram looks up one cryptogram, POST /lookup the cryptograms in the body, one per line.
+ * Every result is one JSON line {"cryptogram": ..., "key": ... or null, "timeMillis": ...}.
+ * Every request gets its own (virtual if possible) thread, which waits for admission by the scheduler and then for
+ * the chain work, done by the scheduler's CPU-sized pool with at most queryThreads workers per query. Requests beyond
+ * the scheduler's queue limit are refused with 503, so a burst of clients cannot oversubscribe the CPU.
+ * GET requests answered by the result cache of the set skip the admission, as they need no chain work.
+ */
+public class LookupServer {
+    private final static int BACKLOG = 1024;
+    private final static int RESULT_CACHE_SNAPSHOT_SECS = 60;
+
+    private final RainbowTableSet tableSet;
+    private final ComputeScheduler scheduler;
+    private final int queryThreads;
+    private final HttpServer server;
+    private final ExecutorService workers;
+    private File resultCacheFile;
+    private ScheduledExecutorService snapshots;
+
+    public LookupServer(RainbowTableSet tableSet, ComputeScheduler scheduler, int queryThreads, int port) throws IOException {
+        this.tableSet = tableSet;
+        this.scheduler = scheduler;
+        this.queryThreads = queryThreads;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), BACKLOG);
+        this.workers = scheduler.newQueryExecutor();
+
+        tableSet.setScheduler(scheduler);
+
+        server.setExecutor(workers);
+        server.createContext("/lookup", this::handleLookup);
+    }
+
+    // The result cache of the set is saved to the file periodically and when the server stops
+    public void setResultCacheFile(File resultCacheFile) {
+        this.resultCacheFile = resultCacheFile;
+    }
+
+    public void start() {
+        if (resultCacheFile != null && tableSet.getResultCache() != null) {
+            snapshots = Executors.newSingleThreadScheduledExecutor();
+            snapshots.scheduleWithFixedDelay(this::saveResultCache, RESULT_CACHE_SNAPSHOT_SECS, RESULT_CACHE_SNAPSHOT_SECS,
+                    TimeUnit.SECONDS);
+        }
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        workers.shutdownNow();
+        if (snapshots != null) {
+            snapshots.shutdownNow();
+            saveResultCache();
+        }
+    }
+
+    private void saveResultCache() {
+        try {
+            tableSet.getResultCache().save(resultCacheFile);
+        } catch (IOException e) {
+            System.err.println("Błąd podczas zapisywania pamięci podręcznej wyników do pliku " + resultCacheFile + ": " + e.getMessage());
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handleLookup(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("GET") && !exchange.getRequestMethod().equals("POST")) {
+            reply(exchange, 405, errorLine(null, "dozwolone metody: GET, POST"));
+            exchange.close();
+            return;
+        }
+        if (exchange.getRequestMethod().equals("GET") && replyCached(exchange)) {
+            exchange.close();
+            return;
+        }
+
+        ComputeScheduler.Admission admission = null;
+        try {
+            admission = scheduler.admit();
+            if (exchange.getRequestMethod().equals("GET")) {
+                lookupOne(exchange);
+            } else {
+                lookupMany(exchange);
+            }
+        } catch (RejectedExecutionException e) {
+            reply(exchange, 503, errorLine(null, "serwer przeciążony: " + e.getMessage()));
+        } catch (InterruptedException e) {
+            reply(exchange, 503, errorLine(null, "serwer jest zatrzymywany"));
+        } catch (RuntimeException e) { // lookupMany reports its own failures, it has sent the status before
+            reply(exchange, 500, errorLine(null, String.valueOf(e.getMessage())));
+        } finally {
+            if (admission != null) {
+                admission.close();
+            }
+            exchange.close();
+        }
+    }
+
+    private void lookupOne(HttpExchange exchange) throws IOException, InterruptedException {
+        String cryptogram = queryParameter(exchange, "c");
+        if (cryptogram == null || !Hex.isHexBlocks(cryptogram)) {
+            reply(exchange, 400, errorLine(cryptogram, "niepoprawny kryptogram, oczekiwano /lookup?c=<kryptogram>"));
+            return;
+        }
+
+        long timeMillis = System.currentTimeMillis();
+        byte[] key = tableSet.queryTables(cryptogram, queryThreads); // the cache was checked by replyCached
+        timeMillis = System.currentTimeMillis() - timeMillis;
+
+        reply(exchange, 200, resultLine(cryptogram, key, timeMillis));
+    }
+
+    // Replies with the cached result of the cryptogram, false (with nothing sent) if it is not cached or not valid
+    private boolean replyCached(HttpExchange exchange) throws IOException {
+        String cryptogram = queryParameter(exchange, "c");
+        if (cryptogram == null || !Hex.isHexBlocks(cryptogram)) {
+            return false;
+        }
+
+        byte[] cached = tableSet.cachedResult(cryptogram);
+        if (cached == null) {
+            return false;
+        }
+
+        reply(exchange, 200, resultLine(cryptogram, cached != ResultCache.NOT_FOUND ? cached : null, 0));
+        return true;
+    }
+
+    /**
+     * Results are streamed as the batches resolve, lines which are not cryptograms get an error line. The status has been
+     * sent by then, so a failed lookup is reported with an error line for every cryptogram still without an answer.
+     */
+    private void lookupMany(HttpExchange exchange) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8));
+
+        exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson; charset=utf-8");
+        exchange.sendResponseHeaders(200, 0);
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8));
+        Set<String> unanswered = ConcurrentHashMap.newKeySet();
+
+        Iterator<String> cryptograms = reader.lines()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .filter(line -> {
+                    if (Hex.isHexBlocks(line)) {
+                        unanswered.add(line);
+                        return true;
+                    }
+                    synchronized (out) {
+                        out.print(errorLine(line, "niepoprawny kryptogram"));
+                    }
+                    return false;
+                })
+                .iterator();
+
+        try {
+            tableSet.lookupBatch(cryptograms, queryThreads, (cryptogram, key) -> {
+                synchronized (out) {
+                    unanswered.remove(cryptogram);
+                    out.print(resultLine(cryptogram, key, System.currentTimeMillis() - startMillis));
+                }
+            });
+        } catch (UncheckedIOException e) {
+            out.print(errorLine(null, "błąd odczytu żądania: " + e.getMessage()));
+        } catch (InterruptedException e) {
+            out.print(errorLine(null, "serwer jest zatrzymywany")); // the status has been sent already
+        } catch (RuntimeException e) {
+            try {
+                cryptograms.forEachRemaining(cryptogram -> { }); // the rest of the request is answered with errors as well
+            } catch (UncheckedIOException readError) {
+                out.print(errorLine(null, "błąd odczytu żądania: " + readError.getMessage()));
+            }
+            synchronized (out) {
+                for (String cryptogram : unanswered) {
+                    out.print(errorLine(cryptogram, "błąd przeszukiwania: " + e.getMessage()));
+                }
+            }
+        }
+
+        out.flush();
+    }
+
+    private static String queryParameter(HttpExchange exchange, String name) {
+        String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return null;
+        }
+
+        for (String parameter : query.split("&")) {
+            if (parameter.startsWith(name + "=")) {
+                return parameter.substring(name.length() + 1).trim();
+            }
+        }
+        return null;
+    }
+
+    private static void reply(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String resultLine(String cryptogram, byte[] key, long timeMillis) {
+        return "{\"cryptogram\": " + jsonString(cryptogram) + ", \"key\": " + (key != null ? jsonString(new String(key)) : "null")
+                + ", \"timeMillis\": " + timeMillis + "}\n";
+    }
+
+    private static String errorLine(String cryptogram, String message) {
+        return "{\"cryptogram\": " + (cryptogram != null ? jsonString(cryptogram) : "null") + ", \"error\": " + jsonString(message) + "}\n";
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder json = new StringBuilder("\"");
+
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+
+        return json.append('"').toString();
+    }
+}
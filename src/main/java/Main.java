@@ -1,16 +1,48 @@
+import keygenerators.KeySpace;
 import org.apache.commons.cli.*;
 
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
 public class Main {
+    private Tracer tracer = Tracer.NONE; // TimingTracer with -tm, wrapped by SamplingProfiler with -pr
     private static final CommandLineParser parser = new DefaultParser();
     private static final HelpFormatter formatter = new HelpFormatter();
     private static final int MAX_CHAIN_LENGTH = 1000000;
     private static final int MAX_N_CHAINS = 100000000;
     private static final int MAX_N_THREADS = 1024;
+    private static final int MAX_MEMORY_MB = 1024 * 1024;
+    private static final int MAX_TABLE_INDEX = 1000;
+    private static final int DEFAULT_PORT = 8787;
+    private static final int MAX_PORT = 65535;
+    private static final int DEFAULT_QUEUE_DEPTH = 1024;
+    private static final int MAX_QUEUE_DEPTH = 1000000;
+    private static final int DEFAULT_RESULT_CACHE_SIZE = 100000;
+    private static final int MAX_RESULT_CACHE_SIZE = 100000000;
+    private static final int DEFAULT_METRICS_INTERVAL_SECS = 10;
+    private static final int MAX_METRICS_INTERVAL_SECS = 86400;
+    private static final int PROFILER_INTERVAL_MILLIS = 10;
+    private static final int MAX_WORKERS = 256;
+    private static final int DEFAULT_MERGE_MEMORY_MB = 256;
 
     private enum NumberArgType {
         chainLength,
         nChains,
-        nThreads
+        nThreads,
+        dpDigits,
+        maxMemory,
+        tableIndex,
+        port,
+        queueDepth,
+        resultCacheSize,
+        passwordLength,
+        metricsInterval,
+        workers
     }
 
     public static void main(String[] args) {
@@ -18,16 +50,74 @@ public class Main {
 
         Options options = new Options();
         Option password = new Option("p", "password", true, "hasło do zaszyfrowania (dowolny ciąg znaków bez spacji)");
-        Option secretKey = new Option("sk", "secretKey", true, "klucz o długości dokładnie " + DES.KEY_LENGTH + " bajtów (" + DES.KEY_LENGTH + " cyfr z zakresu 0-9)");
+        Option secretKey = new Option("sk", "secretKey", true, "klucz o długości dokładnie " + DES.KEY_LENGTH + " bajtów (np. " + DES.KEY_LENGTH + " cyfr z zakresu 0-9)");
         Option cipherText = new Option("c", "cipherText", true, "kryptogram (zaszyfrowane hasło w postaci szesnastkowej)");
+        Option cipherTextFile = new Option("cf", "cipherTextFile", true, "plik z kryptogramami do złamania, po jednym w linii; "
+                + "\"-\" oznacza standardowe wejście");
         Option file = new Option("f", "file", true, "nazwa pliku z tablicą tęczową");
         Option chainLength = new Option("cl", "chainLength", true, "liczba kluczy w każdym łańcuchu");
-        Option nChains = new Option("nc", "nChains", true, "[opcjonalne] liczba łańcuchów do wygenerowania; jeśli nie będzie podana, zostanie użyta domyślna wartość");
+        Option nChains = new Option("nc", "nChains", true, "[opcjonalne] liczba kluczy startowych, dla których zostaną wygenerowane łańcuchy; "
+                + "łańcuchy o powtórzonych punktach końcowych i bez punktu wyróżnionego nie są zapisywane, więc tablica może być mniejsza (zob. -pt); "
+                + "jeśli nie będzie podana, zostanie użyta domyślna wartość");
         Option nThreads = new Option("nt", "nThreads", true, "[opcjonalne] liczba wątków, domyślnie równa ilości rdzeni");
+        Option lookupMode = new Option("lm", "lookupMode", true, "[opcjonalne] sposób przeszukiwania tablicy: [rainbow, exhaustive], domyślnie rainbow");
+        Option fileFormat = new Option("ff", "fileFormat", true, "[opcjonalne] format zapisywanego pliku z tablicą: [binary, compressed, text], "
+                + "domyślnie binary; compressed zajmuje kilka razy mniej miejsca kosztem wolniejszego przeszukiwania");
+        Option output = new Option("o", "output", true, "nazwa pliku wynikowego");
+        Option tableStore = new Option("ts", "tableStore", true, "[opcjonalne] sposób przechowywania tablicy: [heap, offheap, mapped]; "
+                + "domyślnie heap przy generowaniu, a przy przeszukiwaniu mapped dla plików binarnych i heap dla tekstowych");
+        Option distinguishedPoints = new Option("dp", "distinguishedPoints", true, "[opcjonalne] łańcuchy kończą się na punktach wyróżnionych, "
+                + "czyli kluczach, których podana liczba najmłodszych znaków to pierwszy znak zestawu (dla cyfr: zera); "
+                + "chainLength jest wtedy maksymalną długością łańcucha");
+        Option maxMemory = new Option("mm", "maxMemory", true, "[opcjonalne] buduje tablicę przez sortowanie zewnętrzne w katalogu <file>.parts, "
+                + "używając na łańcuchy najwyżej podanej liczby MB pamięci; bez tej opcji cała tablica jest budowana w pamięci");
+        Option resume = new Option("r", "resume", false, "[opcjonalne] wznawia przerwane generowanie od ostatniego punktu kontrolnego "
+                + "zapisanego w katalogu <file>.parts; parametry muszą być takie same jak w przerwanym uruchomieniu");
+        Option tableIndex = new Option("ti", "tableIndex", true, "[opcjonalne] indeks tablicy w zestawie, domyślnie 0; tablice o różnych "
+                + "indeksach używają różnych funkcji redukcji, więc zestaw kilku tablic pokrywa więcej kluczy niż każda z nich osobno");
+        Option port = new Option("port", "port", true, "[opcjonalne] port, na którym serwer nasłuchuje (tylko na adresie lokalnym), "
+                + "domyślnie " + DEFAULT_PORT);
+        Option queryThreads = new Option("qt", "queryThreads", true, "[opcjonalne] najwyższa liczba wątków obliczeniowych, "
+                + "których może używać jedno zapytanie, domyślnie nThreads");
+        Option maxQueries = new Option("mq", "maxQueries", true, "[opcjonalne] liczba zapytań obsługiwanych jednocześnie, "
+                + "kolejne czekają w kolejce w kolejności nadejścia; domyślnie nThreads");
+        Option queueDepth = new Option("qd", "queueDepth", true, "[opcjonalne] najwyższa liczba zapytań czekających w kolejce, "
+                + "kolejne są odrzucane; domyślnie " + DEFAULT_QUEUE_DEPTH);
+        Option resultCache = new Option("rc", "resultCache", true, "[opcjonalne] plik pamięci podręcznej wyników: kryptogramy "
+                + "złamane lub nieznalezione wcześniej nie są przeszukiwane ponownie; plik jest wczytywany na starcie i zapisywany przy zakończeniu");
+        Option resultCacheSize = new Option("rcs", "resultCacheSize", true, "[opcjonalne] najwyższa liczba wyników w pamięci podręcznej, "
+                + "najdawniej używane są usuwane; domyślnie " + DEFAULT_RESULT_CACHE_SIZE);
+        Option charset = new Option("cs", "charset", true, "[opcjonalne] znaki, z których składają się klucze: [digits, hex, alnum] "
+                + "albo wprost podane znaki (drukowalne ASCII bez spacji), domyślnie digits");
+        Option passwordLength = new Option("pl", "passwordLength", true, "[opcjonalne] liczba znaków klucza z zestawu -cs, od 1 do "
+                + DES.KEY_LENGTH + "; pozostałe znaki klucza są równe pierwszemu znakowi zestawu, domyślnie " + DES.KEY_LENGTH);
+        Option metrics = new Option("mt", "metrics", true, "[opcjonalne] plik, do którego okresowo dopisywane są metryki "
+                + "(łańcuchy i ogniwa na sekundę, kolizje, kandydaci, fałszywe alarmy, operacje DES, opóźnienia) jako linie JSON; "
+                + "metryki są też zawsze dostępne przez JMX jako rtdes:type=Metrics");
+        Option metricsInterval = new Option("mi", "metricsInterval", true, "[opcjonalne] co ile sekund dopisywane są metryki, "
+                + "domyślnie " + DEFAULT_METRICS_INTERVAL_SECS);
+        Option profile = new Option("pr", "profile", false, "[opcjonalne] profiler próbkujący: co " + PROFILER_INTERVAL_MILLIS
+                + " ms odczytuje fazę pracy (inicjalizacja DES, szyfrowanie, redukcja, przeszukanie indeksu, odtwarzanie łańcucha) "
+                + "każdego wątku i przy zakończeniu wypisuje udział faz w próbkach");
+        Option timing = new Option("tm", "timing", false, "[opcjonalne] wypisuje czas generowania, przeszukiwania, zapisu "
+                + "i wczytywania tablicy oraz łączny czas pracy każdego wątku generowania");
+        Option workers = new Option("w", "workers", true, "[opcjonalne] liczba procesów roboczych na tym komputerze; przy generowaniu "
+                + "każdy proces buduje swój fragment przestrzeni kluczy startowych do pliku <file>/" + ShardCoordinator.shardFileName(0, 2)
+                + " itd., przy przeszukiwaniu procesy dzielą się plikami tablic i odpowiadają przez adres lokalny; nThreads to suma wątków procesów");
+        Option shard = new Option("sh", "shard", true, "[opcjonalne] generuje tylko fragment i/n, czyli i-ty z n równych przedziałów "
+                + "kluczy startowych (numeracja od 0); fragmenty razem tworzą całą tablicę, -w uruchamia je w osobnych procesach");
+        Option perfect = new Option("pt", "perfect", false, "[opcjonalne] tablica doskonała: łańcuchy utracone przez kolizje punktów końcowych "
+                + "są generowane ponownie, aż tablica będzie zawierać nChains różnych punktów końcowych");
 
-        String argMode, argPassword, argSecretKey, argCipherText, argFile, argChainLength, argNChains, argNThreads;
+        String argMode, argPassword, argSecretKey, argCipherText, argFile, argChainLength, argNChains, argNThreads, argLookupMode,
+                argFileFormat, argOutput, argTableStore, argDistinguishedPoints,
+                argCipherTextFile, argMaxMemory, argTableIndex, argPort, argQueryThreads, argMaxQueries, argQueueDepth,
+                argResultCache, argResultCacheSize, argCharset, argPasswordLength;
+        String[] argFiles;
+        String argShard;
+        boolean argPerfect, argResume;
 
-        Option mode = new Option("m", "mode", true, "tryb działania programu: [encrypt, decrypt, generate, crack]");
+        Option mode = new Option("m", "mode", true, "tryb działania programu: [encrypt, decrypt, generate, extend, crack, serve, convert, merge]");
         mode.setRequired(true);
         options.addOption(mode);
 
@@ -48,7 +138,7 @@ public class Main {
                 options.addOption(password);
 
                 secretKey.setRequired(false);
-                secretKey.setDescription("[opcjonalne] klucz o długości dokładnie " + DES.KEY_LENGTH + " bajtów (" + DES.KEY_LENGTH + " cyfr z zakresu 0-9), którym ma zostać zaszyfrowane hasło; jeśli nie będzie podany, zostanie wygenerowany losowo");
+                secretKey.setDescription("[opcjonalne] klucz o długości dokładnie " + DES.KEY_LENGTH + " bajtów (np. " + DES.KEY_LENGTH + " cyfr z zakresu 0-9), którym ma zostać zaszyfrowane hasło; jeśli nie będzie podany, zostanie wygenerowany losowo z cyfr");
                 options.addOption(secretKey);
 
                 cmd = parseArgs(options, args);
@@ -67,7 +157,7 @@ public class Main {
                 options.addOption(cipherText);
 
                 secretKey.setRequired(true);
-                secretKey.setDescription("klucz o długości dokładnie " + DES.KEY_LENGTH + " bajtów (" + DES.KEY_LENGTH + " cyfr z zakresu 0-9), którym zostało zaszyfrowane hasło");
+                secretKey.setDescription("klucz o długości dokładnie " + DES.KEY_LENGTH + " bajtów (np. " + DES.KEY_LENGTH + " cyfr z zakresu 0-9), którym zostało zaszyfrowane hasło");
                 options.addOption(secretKey);
 
                 cmd = parseArgs(options, args);
@@ -98,37 +188,307 @@ public class Main {
                 nThreads.setRequired(false);
                 options.addOption(nThreads);
 
+                fileFormat.setRequired(false);
+                options.addOption(fileFormat);
+
+                tableStore.setRequired(false);
+                tableStore.setDescription("[opcjonalne] miejsce przechowywania tablicy podczas generowania: [heap, offheap], domyślnie heap");
+                options.addOption(tableStore);
+
+                perfect.setRequired(false);
+                options.addOption(perfect);
+
+                distinguishedPoints.setRequired(false);
+                options.addOption(distinguishedPoints);
+
+                resume.setRequired(false);
+                options.addOption(resume);
+
+                maxMemory.setRequired(false);
+                options.addOption(maxMemory);
+
+                tableIndex.setRequired(false);
+                options.addOption(tableIndex);
+
+                charset.setRequired(false);
+                options.addOption(charset);
+
+                passwordLength.setRequired(false);
+                options.addOption(passwordLength);
+
+                options.addOption(workers);
+                options.addOption(shard);
+
+                options.addOption(metrics);
+                options.addOption(metricsInterval);
+                options.addOption(profile);
+                options.addOption(timing);
+
                 cmd = parseArgs(options, args);
+                main.startMetricsDump(cmd.getOptionValue("metrics"), cmd.getOptionValue("metricsInterval"));
+                main.startTiming(cmd.hasOption("timing"));
+                main.startProfiler(cmd.hasOption("profile"));
 
                 argFile = cmd.getOptionValue("file");
                 argChainLength = cmd.getOptionValue("chainLength");
                 argPassword = cmd.getOptionValue("password");
                 argNChains = cmd.getOptionValue("nChains");
                 argNThreads = cmd.getOptionValue("nThreads");
+                argFileFormat = cmd.getOptionValue("fileFormat");
+                argTableStore = cmd.getOptionValue("tableStore");
+                argPerfect = cmd.hasOption("perfect");
+                argDistinguishedPoints = cmd.getOptionValue("distinguishedPoints");
+
+                argResume = cmd.hasOption("resume");
+                argMaxMemory = cmd.getOptionValue("maxMemory");
+                argTableIndex = cmd.getOptionValue("tableIndex");
+                argCharset = cmd.getOptionValue("charset");
+                argPasswordLength = cmd.getOptionValue("passwordLength");
+                argShard = cmd.getOptionValue("shard");
 
-                main.generate(argFile, argChainLength, argPassword, argNChains, argNThreads);
+                if (cmd.hasOption("workers")) {
+                    exitOnFailure(main.generateSharded(cmd));
+                    break;
+                }
+                exitOnFailure(main.generate(argFile, argChainLength, argPassword, argNChains, argNThreads, argFileFormat, argTableStore,
+                        argPerfect, argDistinguishedPoints, argResume, argMaxMemory, argTableIndex, argCharset, argPasswordLength, argShard));
                 break;
-            case "crack":
+            case "extend":
                 file.setRequired(true);
-                file.setDescription("nazwa pliku zawierającego tablicę tęczową");
+                file.setDescription("nazwa pliku z tablicą tęczową do rozszerzenia (binarnego lub tekstowego)");
                 options.addOption(file);
 
-                cipherText.setRequired(true);
-                options.addOption(cipherText);
+                nChains.setRequired(true);
+                nChains.setDescription("liczba kolejnych kluczy startowych, których łańcuchy zostaną dodane do tablicy");
+                options.addOption(nChains);
+
+                output.setRequired(false);
+                output.setDescription("[opcjonalne] nazwa pliku wynikowego, domyślnie tablica zastępuje plik wejściowy");
+                options.addOption(output);
 
                 nThreads.setRequired(false);
                 options.addOption(nThreads);
 
+                fileFormat.setRequired(false);
+                options.addOption(fileFormat);
+
+                tableStore.setRequired(false);
+                tableStore.setDescription("[opcjonalne] miejsce przechowywania tablicy podczas generowania: [heap, offheap], domyślnie heap");
+                options.addOption(tableStore);
+
+                perfect.setRequired(false);
+                perfect.setDescription("[opcjonalne] łańcuchy utracone przez kolizje punktów końcowych są generowane ponownie, "
+                        + "aż tablica będzie zawierać nChains różnych punktów końcowych więcej");
+                options.addOption(perfect);
+
+                resume.setRequired(false);
+                resume.setDescription("[opcjonalne] wznawia przerwane rozszerzanie od ostatniego punktu kontrolnego zapisanego w katalogu "
+                        + "<output>.parts; parametry muszą być takie same jak w przerwanym uruchomieniu");
+                options.addOption(resume);
+
+                maxMemory.setRequired(false);
+                maxMemory.setDescription("[opcjonalne] buduje tablicę przez sortowanie zewnętrzne w katalogu <output>.parts, "
+                        + "używając na łańcuchy najwyżej podanej liczby MB pamięci");
+                options.addOption(maxMemory);
+
+                options.addOption(metrics);
+                options.addOption(metricsInterval);
+                options.addOption(profile);
+                options.addOption(timing);
+
                 cmd = parseArgs(options, args);
+                main.startMetricsDump(cmd.getOptionValue("metrics"), cmd.getOptionValue("metricsInterval"));
+                main.startTiming(cmd.hasOption("timing"));
+                main.startProfiler(cmd.hasOption("profile"));
 
                 argFile = cmd.getOptionValue("file");
+                argNChains = cmd.getOptionValue("nChains");
+                argOutput = cmd.getOptionValue("output");
+                argNThreads = cmd.getOptionValue("nThreads");
+                argFileFormat = cmd.getOptionValue("fileFormat");
+                argTableStore = cmd.getOptionValue("tableStore");
+                argPerfect = cmd.hasOption("perfect");
+                argResume = cmd.hasOption("resume");
+                argMaxMemory = cmd.getOptionValue("maxMemory");
+
+                exitOnFailure(main.extend(argFile, argNChains, argOutput, argNThreads, argFileFormat, argTableStore, argPerfect, argResume,
+                        argMaxMemory));
+                break;
+            case "crack":
+                file.setRequired(true);
+                file.setDescription("nazwa pliku z tablicą tęczową; kilka tablic (zestaw) można podać po przecinku "
+                        + "albo jako katalog zawierający tylko pliki tablic");
+                file.setArgs(Option.UNLIMITED_VALUES);
+                file.setValueSeparator(',');
+                options.addOption(file);
+
+                // Either a single cryptogram or a file of them
+                OptionGroup cipherTextGroup = new OptionGroup();
+                cipherTextGroup.addOption(cipherText);
+                cipherTextGroup.addOption(cipherTextFile);
+                cipherTextGroup.setRequired(true);
+                options.addOptionGroup(cipherTextGroup);
+
+                nThreads.setRequired(false);
+                options.addOption(nThreads);
+
+                lookupMode.setRequired(false);
+                options.addOption(lookupMode);
+
+                tableStore.setRequired(false);
+                options.addOption(tableStore);
+
+                resultCache.setRequired(false);
+                options.addOption(resultCache);
+
+                resultCacheSize.setRequired(false);
+                options.addOption(resultCacheSize);
+
+                options.addOption(workers);
+
+                options.addOption(metrics);
+                options.addOption(metricsInterval);
+                options.addOption(profile);
+                options.addOption(timing);
+
+                cmd = parseArgs(options, args);
+                main.startMetricsDump(cmd.getOptionValue("metrics"), cmd.getOptionValue("metricsInterval"));
+                main.startTiming(cmd.hasOption("timing"));
+                main.startProfiler(cmd.hasOption("profile"));
+
+                if (cmd.hasOption("workers")) {
+                    exitOnFailure(main.crackSharded(cmd));
+                    break;
+                }
+
+                argFiles = cmd.getOptionValues("file");
                 argCipherText = cmd.getOptionValue("cipherText");
+                argCipherTextFile = cmd.getOptionValue("cipherTextFile");
+                argNThreads = cmd.getOptionValue("nThreads");
+                argLookupMode = cmd.getOptionValue("lookupMode");
+                argTableStore = cmd.getOptionValue("tableStore");
+                argResultCache = cmd.getOptionValue("resultCache");
+                argResultCacheSize = cmd.getOptionValue("resultCacheSize");
+
+                exitOnFailure(main.crack(argFiles, argCipherText, argCipherTextFile, argNThreads, argLookupMode, argTableStore,
+                        argResultCache, argResultCacheSize));
+                break;
+            case "serve":
+                file.setRequired(true);
+                file.setDescription("nazwa pliku z tablicą tęczową, którą serwer trzyma w pamięci; kilka tablic (zestaw) można podać "
+                        + "po przecinku albo jako katalog zawierający tylko pliki tablic");
+                file.setArgs(Option.UNLIMITED_VALUES);
+                file.setValueSeparator(',');
+                options.addOption(file);
+
+                nThreads.setRequired(false);
+                nThreads.setDescription("[opcjonalne] liczba wątków obliczeniowych wspólnych dla wszystkich zapytań, domyślnie równa ilości rdzeni");
+                options.addOption(nThreads);
+
+                queryThreads.setRequired(false);
+                options.addOption(queryThreads);
+
+                maxQueries.setRequired(false);
+                options.addOption(maxQueries);
+
+                queueDepth.setRequired(false);
+                options.addOption(queueDepth);
+
+                tableStore.setRequired(false);
+                options.addOption(tableStore);
+
+                port.setRequired(false);
+                options.addOption(port);
+
+                resultCache.setRequired(false);
+                resultCache.setDescription("[opcjonalne] plik pamięci podręcznej wyników: kryptogramy złamane lub nieznalezione "
+                        + "wcześniej nie są przeszukiwane ponownie; plik jest wczytywany na starcie i zapisywany co minutę oraz przy zatrzymaniu");
+                options.addOption(resultCache);
+
+                resultCacheSize.setRequired(false);
+                options.addOption(resultCacheSize);
+
+                options.addOption(metrics);
+                options.addOption(metricsInterval);
+                options.addOption(profile);
+                options.addOption(timing);
+
+                cmd = parseArgs(options, args);
+                main.startMetricsDump(cmd.getOptionValue("metrics"), cmd.getOptionValue("metricsInterval"));
+                main.startTiming(cmd.hasOption("timing"));
+                main.startProfiler(cmd.hasOption("profile"));
+
+                argFiles = cmd.getOptionValues("file");
                 argNThreads = cmd.getOptionValue("nThreads");
+                argTableStore = cmd.getOptionValue("tableStore");
+                argPort = cmd.getOptionValue("port");
+                argQueryThreads = cmd.getOptionValue("queryThreads");
+                argMaxQueries = cmd.getOptionValue("maxQueries");
+                argQueueDepth = cmd.getOptionValue("queueDepth");
+                argResultCache = cmd.getOptionValue("resultCache");
+                argResultCacheSize = cmd.getOptionValue("resultCacheSize");
 
-                main.crack(argFile, argCipherText, argNThreads);
+                main.serve(argFiles, argNThreads, argTableStore, argPort, argQueryThreads, argMaxQueries, argQueueDepth, argResultCache,
+                        argResultCacheSize);
+                break;
+            case "convert":
+                file.setRequired(true);
+                file.setDescription("nazwa pliku z tablicą tęczową do przekonwertowania (binarnego lub tekstowego)");
+                options.addOption(file);
+
+                output.setRequired(true);
+                options.addOption(output);
+
+                fileFormat.setRequired(true);
+                fileFormat.setDescription("format pliku wynikowego: [binary, compressed, text]");
+                options.addOption(fileFormat);
+
+                cmd = parseArgs(options, args);
+
+                argFile = cmd.getOptionValue("file");
+                argOutput = cmd.getOptionValue("output");
+                argFileFormat = cmd.getOptionValue("fileFormat");
+
+                exitOnFailure(main.convert(argFile, argOutput, argFileFormat));
+                break;
+            case "merge":
+                file.setRequired(true);
+                file.setDescription("nazwy plików tablic do scalenia po przecinku albo katalog zawierający tylko pliki tablic "
+                        + "(np. fragmenty zbudowane z -w); tablice muszą mieć te same parametry, łącznie z indeksem tablicy");
+                file.setArgs(Option.UNLIMITED_VALUES);
+                file.setValueSeparator(',');
+                options.addOption(file);
+
+                output.setRequired(true);
+                options.addOption(output);
+
+                fileFormat.setRequired(false);
+                options.addOption(fileFormat);
+
+                maxMemory.setRequired(false);
+                maxMemory.setDescription("[opcjonalne] pamięć w MB na sortowanie łańcuchów tablic tekstowych w katalogu <output>.parts, "
+                        + "tablice binarne są scalane strumieniowo; domyślnie " + DEFAULT_MERGE_MEMORY_MB);
+                options.addOption(maxMemory);
+
+                cmd = parseArgs(options, args);
+
+                argFiles = cmd.getOptionValues("file");
+                argOutput = cmd.getOptionValue("output");
+                argFileFormat = cmd.getOptionValue("fileFormat");
+                argMaxMemory = cmd.getOptionValue("maxMemory");
+
+                exitOnFailure(main.merge(argFiles, argOutput, argFileFormat, argMaxMemory));
                 break;
             default:
-                System.err.println("Nieznany tryb programu. Dostępne tryby: encrypt, decrypt, generate, crack");
+                System.err.println("Nieznany tryb programu. Dostępne tryby: encrypt, decrypt, generate, extend, crack, serve, convert, merge");
+        }
+    }
+
+    // Modes which write a table or crack cryptograms report a failure with the exit code, e.g. to a calling script or the
+    // coordinator of worker processes; a key which is not found is not a failure
+    private static void exitOnFailure(boolean succeeded) {
+        if (!succeeded) {
+            System.exit(1);
         }
     }
 
@@ -168,6 +528,60 @@ public class Main {
                         numberOutOfRange = true;
                     }
                     break;
+                case maxMemory:
+                    if (number < 1 || number > MAX_MEMORY_MB) {
+                        System.err.println("Limit pamięci musi być pomiędzy 1 a " + MAX_MEMORY_MB + " MB");
+                        numberOutOfRange = true;
+                    }
+                    break;
+                case port:
+                    if (number < 1 || number > MAX_PORT) {
+                        System.err.println("Numer portu musi być pomiędzy 1 a " + MAX_PORT);
+                        numberOutOfRange = true;
+                    }
+                    break;
+                case queueDepth:
+                    if (number < 0 || number > MAX_QUEUE_DEPTH) {
+                        System.err.println("Długość kolejki zapytań musi być pomiędzy 0 a " + MAX_QUEUE_DEPTH);
+                        numberOutOfRange = true;
+                    }
+                    break;
+                case passwordLength:
+                    if (number < 1 || number > DES.KEY_LENGTH) {
+                        System.err.println("Długość hasła musi być pomiędzy 1 a " + DES.KEY_LENGTH);
+                        numberOutOfRange = true;
+                    }
+                    break;
+                case workers:
+                    if (number < 1 || number > MAX_WORKERS) {
+                        System.err.println("Liczba procesów roboczych musi być pomiędzy 1 a " + MAX_WORKERS);
+                        numberOutOfRange = true;
+                    }
+                    break;
+                case metricsInterval:
+                    if (number < 1 || number > MAX_METRICS_INTERVAL_SECS) {
+                        System.err.println("Odstęp zapisu metryk musi być pomiędzy 1 a " + MAX_METRICS_INTERVAL_SECS + " s");
+                        numberOutOfRange = true;
+                    }
+                    break;
+                case resultCacheSize:
+                    if (number < 1 || number > MAX_RESULT_CACHE_SIZE) {
+                        System.err.println("Rozmiar pamięci podręcznej wyników musi być pomiędzy 1 a " + MAX_RESULT_CACHE_SIZE);
+                        numberOutOfRange = true;
+                    }
+                    break;
+                case tableIndex:
+                    if (number < 0 || number > MAX_TABLE_INDEX) {
+                        System.err.println("Indeks tablicy musi być pomiędzy 0 a " + MAX_TABLE_INDEX);
+                        numberOutOfRange = true;
+                    }
+                    break;
+                case dpDigits:
+                    if (number < 1 || number > DES.KEY_LENGTH - 1) {
+                        System.err.println("Liczba cyfr punktu wyróżnionego musi być pomiędzy 1 a " + (DES.KEY_LENGTH - 1));
+                        numberOutOfRange = true;
+                    }
+                    break;
             }
         } catch (NumberFormatException e) {
             System.err.println("Błędny format liczby " + type);
@@ -207,10 +621,52 @@ public class Main {
         System.out.println("Odszyfrowane hasło: " + new String(Hex.hexStringToByteArray(hexPlainText)));
     }
 
-    private void generate(String argFile, String argChainLength, String argPassword, String argNChains, String argNThreads) {
+    private String parseFileFormat(String argFileFormat) {
+        if (argFileFormat == null || argFileFormat.isEmpty()) {
+            return "binary";
+        }
+        if (argFileFormat.equals("binary") || argFileFormat.equals("compressed") || argFileFormat.equals("text")) {
+            return argFileFormat;
+        }
+
+        System.err.println("Nieznany format pliku. Dostępne: binary, compressed, text");
+        System.exit(-1);
+        return null;
+    }
+
+    private void checkTableStore(String argTableStore, boolean mappedAllowed) {
+        if (argTableStore == null || argTableStore.isEmpty() || argTableStore.equals("heap") || argTableStore.equals("offheap")
+                || (mappedAllowed && argTableStore.equals("mapped"))) {
+            return;
+        }
+
+        System.err.println("Nieznany sposób przechowywania tablicy. Dostępne: heap, offheap" + (mappedAllowed ? ", mapped" : ""));
+        System.exit(-1);
+    }
+
+    private boolean save(RainbowTable rainbowTable, String argFile, String fileFormat) {
+        switch (fileFormat) {
+            case "text":
+                return rainbowTable.exportToTextFile(argFile);
+            case "compressed":
+                return rainbowTable.saveToFile(argFile, true);
+            default:
+                return rainbowTable.saveToFile(argFile);
+        }
+    }
+
+    private boolean generate(String argFile, String argChainLength, String argPassword, String argNChains, String argNThreads, String argFileFormat,
+                             String argTableStore, boolean argPerfect, String argDistinguishedPoints, boolean argResume,
+                             String argMaxMemory, String argTableIndex, String argCharset, String argPasswordLength, String argShard) {
         int chainLength = 1000;
         int nChains = 1000;
+        int dpDigits = 0;
+        int tableIndex = 0;
+        int passwordLength = DES.KEY_LENGTH;
+        long maxMemoryMB = 0;
         int nThreads = Runtime.getRuntime().availableProcessors();
+        String fileFormat = parseFileFormat(argFileFormat);
+        checkTableStore(argTableStore, false);
 
         if (argChainLength != null && !argChainLength.isEmpty()) {
             chainLength = parseNumberString(argChainLength, NumberArgType.chainLength);
@@ -221,40 +677,629 @@ public class Main {
         if (argNThreads != null && !argNThreads.isEmpty()) {
             nThreads = parseNumberString(argNThreads, NumberArgType.nThreads);
         }
+        if (argDistinguishedPoints != null && !argDistinguishedPoints.isEmpty()) {
+            dpDigits = parseNumberString(argDistinguishedPoints, NumberArgType.dpDigits);
+        }
+        if (argTableIndex != null && !argTableIndex.isEmpty()) {
+            tableIndex = parseNumberString(argTableIndex, NumberArgType.tableIndex);
+        }
+        if (argPasswordLength != null && !argPasswordLength.isEmpty()) {
+            passwordLength = parseNumberString(argPasswordLength, NumberArgType.passwordLength);
+        }
+        if (argMaxMemory != null && !argMaxMemory.isEmpty()) {
+            maxMemoryMB = parseNumberString(argMaxMemory, NumberArgType.maxMemory);
+            if (argPerfect) {
+                System.err.println("Tablica doskonała (-pt) wymaga budowania w pamięci, nie można jej łączyć z -mm");
+                return false;
+            }
+        }
 
-        RainbowTable rainbowTable = new RainbowTableVerbose(DES.KEY_LENGTH, chainLength, argPassword);
+        RainbowTable rainbowTable;
+        try {
+            KeySpace keySpace = KeySpace.of(argCharset != null && !argCharset.isEmpty() ? argCharset : "digits", passwordLength);
+            rainbowTable = new RainbowTable(keySpace, chainLength, argPassword, dpDigits, tableIndex);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+        rainbowTable.setTracer(tracer);
+        rainbowTable.setOffHeap("offheap".equals(argTableStore));
+        rainbowTable.setPerfect(argPerfect);
+        if (argShard != null && !setShard(rainbowTable, argShard, argPerfect)) {
+            return false;
+        }
+        rainbowTable.setScheduler(new ComputeScheduler(nThreads));
+        // Progress (and external sort runs) are kept next to the table file until the table has been written
+        rainbowTable.setCheckpoint(new File(argFile + ".parts"), argResume);
+        if (maxMemoryMB > 0) {
+            rainbowTable.setExternalSort(new File(argFile + ".parts"), maxMemoryMB * 1024 * 1024);
+        }
         try {
             rainbowTable.generate(nChains, nThreads);
-            rainbowTable.saveToFile(argFile);
+            printGenerationStats(rainbowTable, nChains, argPerfect);
+            if (!save(rainbowTable, argFile, fileFormat)) {
+                return false;
+            }
+            rainbowTable.deleteWorkFiles();
+            return true;
         } catch (InterruptedException e) {
             System.out.println(e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.err.println(e.getMessage());
         }
+        return false;
     }
 
-    private void crack(String argFile, String argCipherText, String argNThreads) {
+    // Parses "i/n" and restricts the table to that shard of the start keys
+    private boolean setShard(RainbowTable rainbowTable, String argShard, boolean perfect) {
+        String[] parts = argShard.split("/");
+        if (parts.length != 2) {
+            System.err.println("Fragment należy podać jako i/n, np. 0/4");
+            return false;
+        }
+        if (perfect) {
+            System.err.println("Tablica doskonała (-pt) nie może być budowana we fragmentach");
+            return false;
+        }
+        try {
+            rainbowTable.setShard(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        } catch (IllegalArgumentException e) {
+            System.err.println(e instanceof NumberFormatException ? "Fragment należy podać jako i/n, np. 0/4" : e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Sharded build: the directory argFile gets one file per worker process, each generated with --shard from its own
+     * range of start keys. The files together are the table, crack and serve take the directory as a table set.
+     */
+    private boolean generateSharded(CommandLine cmd) {
+        int nWorkers = parseNumberString(cmd.getOptionValue("workers"), NumberArgType.workers);
         int nThreads = Runtime.getRuntime().availableProcessors();
 
+        if (cmd.hasOption("nThreads")) {
+            nThreads = parseNumberString(cmd.getOptionValue("nThreads"), NumberArgType.nThreads);
+        }
+        if (cmd.hasOption("perfect") || cmd.hasOption("shard")) {
+            System.err.println("Tablica budowana przez procesy robocze (-w) nie może być doskonała (-pt) ani fragmentem (-sh)");
+            return false;
+        }
+        File directory = new File(cmd.getOptionValue("file"));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            System.err.println("Nie udało się utworzyć katalogu " + directory);
+            return false;
+        }
+
+        // The workers get the options of this call, except for the ones which are set per worker or belong to this process
+        List<String> common = new ArrayList<>();
+        List<String> skipped = Arrays.asList("file", "workers", "nThreads", "metrics", "metricsInterval", "profile");
+        for (Option option : cmd.getOptions()) {
+            if (!skipped.contains(option.getLongOpt())) {
+                common.add("--" + option.getLongOpt());
+                if (option.hasArg()) {
+                    common.add(option.getValue());
+                }
+            }
+        }
+
+        List<List<String>> workerArgs = new ArrayList<>();
+        for (int i = 0; i < nWorkers; i++) {
+            List<String> args = new ArrayList<>(common);
+            args.addAll(Arrays.asList("--file", new File(directory, ShardCoordinator.shardFileName(i, nWorkers)).getPath(),
+                    "--shard", i + "/" + nWorkers, "--nThreads", Integer.toString(Math.max(1, nThreads / nWorkers))));
+            workerArgs.add(args);
+        }
+
+        long timeMillis = System.currentTimeMillis();
+        try {
+            // Not only the exit codes: a worker which has not written its file must not count as done
+            if (ShardCoordinator.runWorkers(workerArgs) && shardFilesExist(directory, nWorkers)) {
+                System.out.println("Generowanie " + nWorkers + " fragmentów zakończone w " + (System.currentTimeMillis() - timeMillis) / 1000.0 + "s");
+                return true;
+            }
+            System.err.println("Generowanie fragmentów nie powiodło się, ukończone fragmenty można wznowić z -r");
+        } catch (IOException e) {
+            System.err.println("Nie udało się uruchomić procesu roboczego: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.err.println("Przerwano generowanie fragmentów");
+        }
+        return false;
+    }
+
+    private boolean shardFilesExist(File directory, int nShards) {
+        boolean allExist = true;
+        for (int i = 0; i < nShards; i++) {
+            if (!new File(directory, ShardCoordinator.shardFileName(i, nShards)).isFile()) {
+                System.err.println("Brak pliku fragmentu " + i + " w katalogu " + directory);
+                allExist = false;
+            }
+        }
+        return allExist;
+    }
+
+    /**
+     * Adds the chains of nChains further start keys to the table in argFile, see RainbowTable.extend. The result
+     * replaces argOutput (by default argFile) only once it has been written completely.
+     */
+    private boolean extend(String argFile, String argNChains, String argOutput, String argNThreads, String argFileFormat, String argTableStore,
+                           boolean argPerfect, boolean argResume, String argMaxMemory) {
+        int nChains = parseNumberString(argNChains, NumberArgType.nChains);
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        long maxMemoryMB = 0;
+        String fileFormat = parseFileFormat(argFileFormat);
+        String outputFile = argOutput != null ? argOutput : argFile;
+        checkTableStore(argTableStore, false);
+
         if (argNThreads != null && !argNThreads.isEmpty()) {
             nThreads = parseNumberString(argNThreads, NumberArgType.nThreads);
         }
+        if (argMaxMemory != null && !argMaxMemory.isEmpty()) {
+            maxMemoryMB = parseNumberString(argMaxMemory, NumberArgType.maxMemory);
+            if (argPerfect) {
+                System.err.println("Tablica doskonała (-pt) wymaga budowania w pamięci, nie można jej łączyć z -mm");
+                return false;
+            }
+        }
 
         RainbowTable rainbowTable;
-
         try {
-            rainbowTable = RainbowTableVerbose.readFromFile(argFile);
+            rainbowTable = RainbowTable.readFromFile(argFile, tracer);
         } catch (Exception e) {
             System.err.println("Błąd podczas wczytywania tablicy z pliku: " + e.getMessage());
-            return;
+            return false;
+        }
+        long baseChains = rainbowTable.getTableSize();
+        System.out.println("Rozszerzanie tablicy " + argFile + " (liczba łańcuchów = " + baseChains + ") od klucza startowego "
+                + rainbowTable.getNextStartKey());
+
+        rainbowTable.setOffHeap("offheap".equals(argTableStore));
+        rainbowTable.setPerfect(argPerfect);
+        rainbowTable.setScheduler(new ComputeScheduler(nThreads));
+        rainbowTable.setCheckpoint(new File(outputFile + ".parts"), argResume);
+        if (maxMemoryMB > 0) {
+            rainbowTable.setExternalSort(new File(outputFile + ".parts"), maxMemoryMB * 1024 * 1024);
+        }
+        try {
+            rainbowTable.extend(nChains, nThreads);
+            printGenerationStats(rainbowTable, baseChains + nChains, argPerfect);
+            if (!saveReplacing(rainbowTable, outputFile, fileFormat)) {
+                return false;
+            }
+            rainbowTable.deleteWorkFiles();
+            return true;
+        } catch (InterruptedException e) {
+            System.out.println(e.getMessage());
+        } catch (UncheckedIOException e) {
+            System.err.println(e.getMessage());
+        }
+        return false;
+    }
+
+    // Merges the tables into one without repeated end keys, see RainbowTable.merge
+    private boolean merge(String[] argFiles, String argOutput, String argFileFormat, String argMaxMemory) {
+        String fileFormat = parseFileFormat(argFileFormat);
+        long maxMemoryMB = DEFAULT_MERGE_MEMORY_MB;
+
+        if (argMaxMemory != null && !argMaxMemory.isEmpty()) {
+            maxMemoryMB = parseNumberString(argMaxMemory, NumberArgType.maxMemory);
         }
 
-        System.out.println("Wczytano tablicę: liczba łańcuchów = " + rainbowTable.getTableSize()
-                + ", długość łańcucha = " + rainbowTable.getChainLength() + ", plaintext = " + rainbowTable.getPlaintext());
+        RainbowTableSet tableSet = loadTableSet(argFiles, null);
+        if (tableSet == null) {
+            return false;
+        }
+        long inputChains = 0;
+        for (RainbowTable table : tableSet.getTables()) {
+            inputChains += table.getTableSize();
+        }
+
+        long timeMillis = System.currentTimeMillis();
+        RainbowTable merged;
+        try {
+            merged = RainbowTable.merge(tableSet.getTables(), new File(argOutput + ".parts"), maxMemoryMB * 1024 * 1024);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return false;
+        } catch (IOException e) {
+            System.err.println("Błąd plików roboczych scalania: " + e.getMessage());
+            return false;
+        }
+        System.out.println("Scalanie " + tableSet.getTables().size() + " tablic zakończone w " + (System.currentTimeMillis() - timeMillis) / 1000.0
+                + "s, łańcuchy: " + inputChains + ", powtórzone punkty końcowe: " + (inputChains - merged.getTableSize())
+                + ", w tablicy: " + merged.getTableSize());
 
-        byte[] foundKey = rainbowTable.lookup(argCipherText, nThreads);
-        if (foundKey != null) {
-            System.out.println("Znaleziono klucz: " + new String(foundKey));
+        if (!saveReplacing(merged, argOutput, fileFormat)) {
+            return false;
+        }
+        merged.deleteWorkFiles();
+        return true;
+    }
+
+    // Written next to the file first: the table being written may still read its chains from the file it replaces
+    private boolean saveReplacing(RainbowTable rainbowTable, String argFile, String fileFormat) {
+        File temporary = new File(argFile + ".tmp");
+        if (!save(rainbowTable, temporary.getPath(), fileFormat)) {
+            temporary.delete();
+            return false;
+        }
+
+        try {
+            Files.move(temporary.toPath(), new File(argFile).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Błąd podczas zapisywania do pliku: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void printGenerationStats(RainbowTable rainbowTable, long nChains, boolean perfect) {
+        long generated = rainbowTable.getGeneratedChains();
+        long merged = rainbowTable.getMergedChains();
+
+        System.out.println("Wygenerowano łańcuchów: " + generated + ", kolizje punktów końcowych: " + merged
+                + " (" + String.format("%.2f", (double) merged / generated * 100) + "%), w tablicy: " + rainbowTable.getTableSize());
+        if (rainbowTable.getDistinguishedPointDigits() > 0) {
+            System.out.println("Łańcuchy bez punktu wyróżnionego w " + rainbowTable.getChainLength() + " krokach (odrzucone): "
+                    + rainbowTable.getAbandonedChains());
+        }
+        System.out.println("Szacowane pokrycie przestrzeni kluczy: " + String.format("%.2f", rainbowTable.estimateCoverage() * 100) + "%");
+
+        if (perfect && rainbowTable.getTableSize() < nChains) {
+            System.out.println("Nie udało się uzyskać " + nChains + " różnych punktów końcowych, przestrzeń kluczy jest wyczerpana");
+        }
+    }
+
+    private boolean crack(String[] argFiles, String argCipherText, String argCipherTextFile, String argNThreads, String argLookupMode,
+                          String argTableStore, String argResultCache, String argResultCacheSize) {
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        boolean exhaustive = false;
+
+        if (argNThreads != null && !argNThreads.isEmpty()) {
+            nThreads = parseNumberString(argNThreads, NumberArgType.nThreads);
+        }
+        if (argLookupMode != null && !argLookupMode.isEmpty()) {
+            switch (argLookupMode) {
+                case "rainbow":
+                    break;
+                case "exhaustive":
+                    exhaustive = true;
+                    break;
+                default:
+                    System.err.println("Nieznany sposób przeszukiwania. Dostępne: rainbow, exhaustive");
+                    return false;
+            }
+        }
+        if (exhaustive && argCipherTextFile != null) {
+            System.err.println("Przeszukiwanie wielu kryptogramów obsługuje tylko tryb rainbow");
+            return false;
+        }
+        if (argCipherTextFile == null && !Hex.isHexBlocks(argCipherText)) {
+            System.err.println(argCipherText + " -> niepoprawny kryptogram");
+            return false;
+        }
+        checkTableStore(argTableStore, true);
+
+        RainbowTableSet tableSet = loadTableSet(argFiles, argTableStore);
+        if (tableSet == null) {
+            return false;
+        }
+        tableSet.setScheduler(new ComputeScheduler(nThreads));
+        if (argResultCache != null && !loadResultCache(tableSet, argResultCache, argResultCacheSize)) {
+            return false;
+        }
+
+        boolean succeeded = true;
+        if (argCipherTextFile != null) {
+            succeeded = crackBatch(tableSet, argCipherTextFile, nThreads);
         } else {
-            System.out.println("Nie znaleziono klucza");
+            byte[] foundKey = exhaustive
+                    ? tableSet.lookupExhaustive(argCipherText, nThreads)
+                    : tableSet.lookup(argCipherText, nThreads);
+            if (foundKey != null) {
+                System.out.println("Znaleziono klucz: " + new String(foundKey));
+            } else {
+                System.out.println("Nie znaleziono klucza");
+            }
+        }
+
+        if (argResultCache != null) {
+            succeeded &= saveResultCache(tableSet.getResultCache(), argResultCache);
+            System.out.println("Pamięć podręczna wyników: " + tableSet.getResultCache());
+        }
+        return succeeded;
+    }
+
+    // Appends the metrics to argMetrics every interval until the program ends, nothing if argMetrics is not given
+    private void startMetricsDump(String argMetrics, String argMetricsInterval) {
+        if (argMetrics == null) {
+            return;
+        }
+
+        int interval = DEFAULT_METRICS_INTERVAL_SECS;
+        if (argMetricsInterval != null && !argMetricsInterval.isEmpty()) {
+            interval = parseNumberString(argMetricsInterval, NumberArgType.metricsInterval);
+        }
+
+        try {
+            Closeable dump = Metrics.shared().startDump(new File(argMetrics), interval);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    dump.close();
+                } catch (IOException e) {
+                    System.err.println("Błąd podczas zapisywania metryk do pliku " + argMetrics + ": " + e.getMessage());
+                }
+            }));
+        } catch (IOException e) {
+            System.err.println("Błąd podczas otwierania pliku metryk " + argMetrics + ": " + e.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    private void startTiming(boolean timing) {
+        if (timing) {
+            tracer = new TimingTracer();
+        }
+    }
+
+    // Samples the phases of the tables' threads until the program ends and prints their shares then
+    private void startProfiler(boolean profile) {
+        if (!profile) {
+            return;
+        }
+
+        SamplingProfiler profiler = new SamplingProfiler(tracer, PROFILER_INTERVAL_MILLIS);
+        tracer = profiler;
+        profiler.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                profiler.stop();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            System.out.println("Profil faz (" + profiler.report() + ")");
+        }));
+    }
+
+    // Sets the cache saved in argResultCache (empty if the file does not exist) on the set, false if it cannot be loaded
+    private boolean loadResultCache(RainbowTableSet tableSet, String argResultCache, String argResultCacheSize) {
+        int resultCacheSize = DEFAULT_RESULT_CACHE_SIZE;
+        if (argResultCacheSize != null && !argResultCacheSize.isEmpty()) {
+            resultCacheSize = parseNumberString(argResultCacheSize, NumberArgType.resultCacheSize);
         }
+
+        try {
+            tableSet.setResultCache(ResultCache.load(new File(argResultCache), resultCacheSize));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Błąd podczas wczytywania pamięci podręcznej wyników z pliku " + argResultCache + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean saveResultCache(ResultCache resultCache, String argResultCache) {
+        try {
+            resultCache.save(new File(argResultCache));
+            return true;
+        } catch (IOException e) {
+            System.err.println("Błąd podczas zapisywania pamięci podręcznej wyników do pliku " + argResultCache + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Loads the tables given by -f, null (with the error printed) if any of them cannot be loaded
+    private RainbowTableSet loadTableSet(String[] argFiles, String argTableStore) {
+        List<RainbowTable> tables = new ArrayList<>();
+
+        for (String tableFile : RainbowTableSet.listTableFiles(argFiles)) {
+            RainbowTable rainbowTable;
+
+            try {
+                rainbowTable = RainbowTable.readFromFile(tableFile, tracer);
+            } catch (Exception e) {
+                System.err.println("Błąd podczas wczytywania tablicy z pliku " + tableFile + ": " + e.getMessage());
+                return null;
+            }
+
+            if ("heap".equals(argTableStore) || "offheap".equals(argTableStore)) {
+                rainbowTable.setOffHeap("offheap".equals(argTableStore));
+                rainbowTable.loadIntoHashTable();
+            }
+
+            System.out.println("Wczytano tablicę " + tableFile + ": liczba łańcuchów = " + rainbowTable.getTableSize()
+                    + ", długość łańcucha = " + rainbowTable.getChainLength() + ", plaintext = " + rainbowTable.getPlaintext()
+                    + (rainbowTable.getDistinguishedPointDigits() > 0
+                    ? ", punkty wyróżnione = " + rainbowTable.getDistinguishedPointDigits() + " cyfr" : "")
+                    + (rainbowTable.getTableIndex() > 0 ? ", indeks tablicy = " + rainbowTable.getTableIndex() : "")
+                    + (!rainbowTable.getKeySpace().isDefault() ? ", przestrzeń kluczy = " + rainbowTable.getKeySpace() : ""));
+            tables.add(rainbowTable);
+        }
+
+        try {
+            return new RainbowTableSet(tables);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return null;
+        }
+    }
+
+    private boolean crackBatch(RainbowTableSet tableSet, String argCipherTextFile, int nThreads) {
+        try (BufferedReader reader = openCipherTextFile(argCipherTextFile)) {
+            tableSet.lookupBatch(cryptogramLines(reader), nThreads, Main::printBatchResult);
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Błąd podczas wczytywania kryptogramów: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.err.println("Przerwano przeszukiwanie tablicy");
+        }
+        return false;
+    }
+
+    private static BufferedReader openCipherTextFile(String argCipherTextFile) throws IOException {
+        return "-".equals(argCipherTextFile)
+                ? new BufferedReader(new InputStreamReader(System.in))
+                : new BufferedReader(new FileReader(argCipherTextFile));
+    }
+
+    // Read lazily, so that results of the first batches appear before the whole input is available
+    private static Iterator<String> cryptogramLines(BufferedReader reader) {
+        return reader.lines()
+                .map(String::trim)
+                .filter(line -> !line.isEmpty())
+                .filter(line -> {
+                    if (Hex.isHexBlocks(line)) {
+                        return true;
+                    }
+                    System.err.println(line + " -> niepoprawny kryptogram");
+                    return false;
+                })
+                .iterator();
+    }
+
+    private static void printBatchResult(String cryptogram, byte[] key) {
+        System.out.println(cryptogram + " -> " + (key != null ? new String(key) : "nie znaleziono"));
+    }
+
+    // Sharded lookup: the table files are split among serve workers on this host, every cryptogram is asked of all of them
+    private boolean crackSharded(CommandLine cmd) {
+        int nWorkers = parseNumberString(cmd.getOptionValue("workers"), NumberArgType.workers);
+        int nThreads = Runtime.getRuntime().availableProcessors();
+
+        if (cmd.hasOption("nThreads")) {
+            nThreads = parseNumberString(cmd.getOptionValue("nThreads"), NumberArgType.nThreads);
+        }
+        if ("exhaustive".equals(cmd.getOptionValue("lookupMode")) || cmd.hasOption("resultCache")) {
+            System.err.println("Przeszukiwanie w procesach roboczych (-w) obsługuje tylko tryb rainbow bez pamięci podręcznej wyników");
+            return false;
+        }
+        String argCipherText = cmd.getOptionValue("cipherText");
+        if (!cmd.hasOption("cipherTextFile") && !Hex.isHexBlocks(argCipherText)) {
+            System.err.println(argCipherText + " -> niepoprawny kryptogram");
+            return false;
+        }
+        String argTableStore = cmd.getOptionValue("tableStore");
+        checkTableStore(argTableStore, true);
+
+        List<String> tableFiles = RainbowTableSet.listTableFiles(cmd.getOptionValues("file"));
+        if (tableFiles.isEmpty()) {
+            System.err.println("Nie znaleziono plików tablic");
+            return false;
+        }
+
+        // Round robin, so that the shards of one table and the tables of a set spread evenly
+        nWorkers = Math.min(nWorkers, tableFiles.size());
+        List<List<String>> groups = new ArrayList<>();
+        for (int i = 0; i < nWorkers; i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < tableFiles.size(); i++) {
+            groups.get(i % nWorkers).add(tableFiles.get(i));
+        }
+
+        String workerThreads = Integer.toString(Math.max(1, nThreads / nWorkers));
+        List<List<String>> workerArgs = new ArrayList<>();
+        for (List<String> group : groups) {
+            List<String> args = new ArrayList<>(Arrays.asList("--mode", "serve", "--file", String.join(",", group),
+                    "--nThreads", workerThreads, "--queryThreads", workerThreads));
+            if (argTableStore != null) {
+                args.add("--tableStore");
+                args.add(argTableStore);
+            }
+            workerArgs.add(args);
+        }
+
+        long timeMillis = System.currentTimeMillis();
+        try (ShardCoordinator coordinator = ShardCoordinator.startLookupWorkers(workerArgs)) {
+            Runtime.getRuntime().addShutdownHook(new Thread(coordinator::close));
+            System.out.println("Uruchomiono " + nWorkers + " procesów roboczych w "
+                    + (System.currentTimeMillis() - timeMillis) / 1000.0 + "s");
+
+            timeMillis = System.currentTimeMillis();
+            if (cmd.hasOption("cipherTextFile")) {
+                try (BufferedReader reader = openCipherTextFile(cmd.getOptionValue("cipherTextFile"))) {
+                    coordinator.lookupBatch(cryptogramLines(reader), Main::printBatchResult);
+                }
+            } else {
+                byte[] foundKey = coordinator.query(argCipherText);
+                if (foundKey != null) {
+                    System.out.println("Znaleziono klucz: " + new String(foundKey));
+                } else {
+                    System.out.println("Nie znaleziono klucza");
+                }
+            }
+            System.out.println("Przeszukiwanie w " + nWorkers + " procesach roboczych zakończone w "
+                    + (System.currentTimeMillis() - timeMillis) / 1000.0 + "s");
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Błąd przeszukiwania w procesach roboczych: " + e.getMessage());
+        } catch (InterruptedException e) {
+            System.err.println("Przerwano przeszukiwanie tablicy");
+        }
+        return false;
+    }
+
+    private void serve(String[] argFiles, String argNThreads, String argTableStore, String argPort, String argQueryThreads,
+                       String argMaxQueries, String argQueueDepth, String argResultCache, String argResultCacheSize) {
+        int nThreads = Runtime.getRuntime().availableProcessors();
+        int port = DEFAULT_PORT;
+        int queueDepth = DEFAULT_QUEUE_DEPTH;
+
+        if (argNThreads != null && !argNThreads.isEmpty()) {
+            nThreads = parseNumberString(argNThreads, NumberArgType.nThreads);
+        }
+        int queryThreads = nThreads;
+        int maxQueries = nThreads;
+        if (argQueryThreads != null && !argQueryThreads.isEmpty()) {
+            queryThreads = parseNumberString(argQueryThreads, NumberArgType.nThreads);
+        }
+        if (argMaxQueries != null && !argMaxQueries.isEmpty()) {
+            maxQueries = parseNumberString(argMaxQueries, NumberArgType.nThreads);
+        }
+        if (argQueueDepth != null && !argQueueDepth.isEmpty()) {
+            queueDepth = parseNumberString(argQueueDepth, NumberArgType.queueDepth);
+        }
+        if (argPort != null && !argPort.isEmpty()) {
+            port = parseNumberString(argPort, NumberArgType.port);
+        }
+        checkTableStore(argTableStore, true);
+
+        RainbowTableSet tableSet = loadTableSet(argFiles, argTableStore);
+        if (tableSet == null) {
+            return;
+        }
+        if (argResultCache != null && !loadResultCache(tableSet, argResultCache, argResultCacheSize)) {
+            return;
+        }
+
+        LookupServer server;
+        try {
+            server = new LookupServer(tableSet, new ComputeScheduler(nThreads, maxQueries, queueDepth), queryThreads, port);
+        } catch (IOException e) {
+            System.err.println("Nie udało się uruchomić serwera na porcie " + port + ": " + e.getMessage());
+            return;
+        }
+
+        if (argResultCache != null) {
+            server.setResultCacheFile(new File(argResultCache));
+        }
+        server.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        System.out.println("Serwer przeszukiwania nasłuchuje na http://" + server.getAddress().getHostString() + ":"
+                + server.getAddress().getPort() + "/lookup (wątki obliczeniowe: " + nThreads + ", na zapytanie: " + queryThreads
+                + ", zapytania jednocześnie: " + maxQueries + ", kolejka: " + queueDepth + ")");
+    }
+
+    private boolean convert(String argFile, String argOutput, String argFileFormat) {
+        String fileFormat = parseFileFormat(argFileFormat);
+        RainbowTable rainbowTable;
+
+        try {
+            rainbowTable = RainbowTable.readFromFile(argFile, tracer);
+        } catch (Exception e) {
+            System.err.println("Błąd podczas wczytywania tablicy z pliku: " + e.getMessage());
+            return false;
+        }
+
+        return save(rainbowTable, argOutput, fileFormat);
     }
 }
@@ -0,0 +1,324 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of generation and lookup work, shared by all tables of the process. Counters are striped (LongAdder),
+ * the hot loops add to them once per lane group or per chain walk, never per encryption. The values are exposed
+ * through JMX (rtdes:type=Metrics) and can be appended periodically to a file as JSON lines.
+ */
+public class Metrics {
+    private final static String OBJECT_NAME = "rtdes:type=Metrics";
+
+    private static Metrics shared;
+
+    // Attributes of the MBean, all cumulative since the start of the process
+    public interface MetricsMXBean {
+        long getChains();
+
+        long getChainLinks();
+
+        long getEndPointCollisions();
+
+        long getAbandonedChains();
+
+        Map<String, Long> getChainsPerWorker();
+
+        long getQueries();
+
+        long getCandidatesProbed();
+
+        long getFalseAlarms();
+
+        long getDesOperations();
+
+        long getDesOperationsPerQueryP50();
+
+        long getDesOperationsPerQueryP99();
+
+        long getLookupLatencyMicrosP50();
+
+        long getLookupLatencyMicrosP99();
+
+        long getLookupLatencyMicrosMax();
+    }
+
+    /**
+     * Histogram with power of two buckets: bucket b counts values of b bits, so percentiles are exact to a factor of 2,
+     * which is enough to spot regressions, and recording is a single striped add.
+     */
+    public static final class Histogram {
+        private final LongAdder[] buckets = new LongAdder[Long.SIZE + 1];
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram() {
+            for (int b = 0; b < buckets.length; b++) {
+                buckets[b] = new LongAdder();
+            }
+        }
+
+        public void record(long value) {
+            buckets[Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, value))].increment();
+            sum.add(value);
+            max.accumulate(value);
+        }
+
+        public long count() {
+            long count = 0;
+            for (LongAdder bucket : buckets) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        public double mean() {
+            long count = count();
+            return count > 0 ? (double) sum.sum() / count : 0;
+        }
+
+        // Upper bound of the bucket holding the given fraction of the values (at most max), 0 if nothing was recorded
+        public long percentile(double fraction) {
+            long count = count(), seen = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                seen += buckets[b].sum();
+                if (seen > 0 && seen >= fraction * count) {
+                    return Math.min(max(), b == 0 ? 0 : b == Long.SIZE ? Long.MAX_VALUE : (1L << b) - 1);
+                }
+            }
+            return 0;
+        }
+
+        public long max() {
+            return max.get();
+        }
+
+        String toJson() {
+            return "{\"count\": " + count() + ", \"mean\": " + String.format(Locale.ROOT, "%.1f", mean()) + ", \"p50\": " + percentile(0.5)
+                    + ", \"p90\": " + percentile(0.9) + ", \"p99\": " + percentile(0.99) + ", \"max\": " + max() + "}";
+        }
+    }
+
+    private final LongAdder chains = new LongAdder();
+    private final LongAdder chainLinks = new LongAdder();
+    private final LongAdder endPointCollisions = new LongAdder();
+    private final LongAdder abandonedChains = new LongAdder();
+    private final Map<Integer, LongAdder> workerChains = new ConcurrentHashMap<>();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder candidatesProbed = new LongAdder();
+    private final LongAdder falseAlarms = new LongAdder();
+    private final LongAdder desOperations = new LongAdder();
+    private final Histogram desOperationsPerQuery = new Histogram();
+    private final Histogram lookupLatencyMicros = new Histogram();
+
+    // Metrics of the process, registered in the platform MBean server on first use
+    public static synchronized Metrics shared() {
+        if (shared == null) {
+            shared = new Metrics();
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(shared.new Bean(), new ObjectName(OBJECT_NAME));
+            } catch (JMException | SecurityException e) {
+                System.err.println("Nie udało się zarejestrować metryk w JMX: " + e.getMessage());
+            }
+        }
+        return shared;
+    }
+
+    public void chainsGenerated(long count, long links) {
+        chains.add(count);
+        chainLinks.add(links);
+    }
+
+    // Counter of the chains generated by the worker, looked up once per slice of work
+    public LongAdder workerChains(int workerId) {
+        return workerChains.computeIfAbsent(workerId, id -> new LongAdder());
+    }
+
+    public void endPointCollisions(long count) {
+        endPointCollisions.add(count);
+    }
+
+    public void abandonedChain() {
+        abandonedChains.increment();
+    }
+
+    // A query looked up on its own, with the work of all of its tables
+    void queryFinished(RainbowTable.LookupResult result, long latencyNanos) {
+        queries.increment();
+        lookupWork(result);
+        desOperationsPerQuery.record(result.getDesOperations());
+        lookupLatencyMicros.record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+    }
+
+    // Work of a batch lookup, whose queries are counted by batchQueries as they have no latency of their own
+    void lookupWork(RainbowTable.LookupResult result) {
+        candidatesProbed.add(result.getCandidatesProbed());
+        falseAlarms.add(result.getFalseAlarms());
+        desOperations.add(result.getDesOperations());
+    }
+
+    void batchQueries(int count) {
+        queries.add(count);
+    }
+
+    /**
+     * Appends a JSON line with all counters, and the rates since the previous line, to file every intervalSecs
+     * seconds, and a last one when the returned handle is closed. Numbers are formatted in Locale.ROOT, a Polish
+     * default locale would write decimal commas.
+     */
+    public Closeable startDump(File file, int intervalSecs) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file, true)));
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Dump dump = new Dump(out);
+
+        executor.scheduleAtFixedRate(dump, intervalSecs, intervalSecs, TimeUnit.SECONDS);
+        return () -> {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(intervalSecs, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            dump.run();
+            out.close();
+        };
+    }
+
+    private class Dump implements Runnable {
+        private final PrintWriter out;
+        private final Map<Integer, Long> lastWorkerChains = new TreeMap<>();
+        private long lastNanos = System.nanoTime();
+        private long lastChains, lastChainLinks, lastQueries;
+
+        Dump(PrintWriter out) {
+            this.out = out;
+        }
+
+        @Override
+        public synchronized void run() {
+            long nanos = System.nanoTime();
+            double seconds = Math.max(1e-9, (nanos - lastNanos) / 1e9);
+            long chains = Metrics.this.chains.sum(), chainLinks = Metrics.this.chainLinks.sum(), queries = Metrics.this.queries.sum();
+
+            StringBuilder workers = new StringBuilder();
+            for (Map.Entry<Integer, Long> worker : getWorkerChains().entrySet()) {
+                long last = lastWorkerChains.getOrDefault(worker.getKey(), 0L);
+                workers.append(workers.length() > 0 ? ", " : "").append('"').append(worker.getKey()).append("\": ")
+                        .append(String.format(Locale.ROOT, "%.1f", (worker.getValue() - last) / seconds));
+                lastWorkerChains.put(worker.getKey(), worker.getValue());
+            }
+
+            out.println("{\"timeMillis\": " + System.currentTimeMillis()
+                    + ", \"chains\": " + chains + ", \"chainLinks\": " + chainLinks
+                    + ", \"chainsPerSec\": " + String.format(Locale.ROOT, "%.1f", (chains - lastChains) / seconds)
+                    + ", \"chainLinksPerSec\": " + String.format(Locale.ROOT, "%.1f", (chainLinks - lastChainLinks) / seconds)
+                    + ", \"workerChainsPerSec\": {" + workers + "}"
+                    + ", \"endPointCollisions\": " + endPointCollisions.sum() + ", \"abandonedChains\": " + abandonedChains.sum()
+                    + ", \"queries\": " + queries + ", \"queriesPerSec\": " + String.format(Locale.ROOT, "%.1f", (queries - lastQueries) / seconds)
+                    + ", \"candidatesProbed\": " + candidatesProbed.sum() + ", \"falseAlarms\": " + falseAlarms.sum()
+                    + ", \"desOperations\": " + desOperations.sum()
+                    + ", \"desOperationsPerQuery\": " + desOperationsPerQuery.toJson()
+                    + ", \"lookupLatencyMicros\": " + lookupLatencyMicros.toJson() + "}");
+            out.flush();
+
+            lastNanos = nanos;
+            lastChains = chains;
+            lastChainLinks = chainLinks;
+            lastQueries = queries;
+        }
+    }
+
+    private Map<Integer, Long> getWorkerChains() {
+        Map<Integer, Long> values = new TreeMap<>();
+        workerChains.forEach((worker, count) -> values.put(worker, count.sum()));
+        return values;
+    }
+
+    private class Bean implements MetricsMXBean {
+        @Override
+        public long getChains() {
+            return chains.sum();
+        }
+
+        @Override
+        public long getChainLinks() {
+            return chainLinks.sum();
+        }
+
+        @Override
+        public long getEndPointCollisions() {
+            return endPointCollisions.sum();
+        }
+
+        @Override
+        public long getAbandonedChains() {
+            return abandonedChains.sum();
+        }
+
+        @Override
+        public Map<String, Long> getChainsPerWorker() {
+            Map<String, Long> values = new TreeMap<>();
+            getWorkerChains().forEach((worker, count) -> values.put(worker.toString(), count));
+            return values;
+        }
+
+        @Override
+        public long getQueries() {
+            return queries.sum();
+        }
+
+        @Override
+        public long getCandidatesProbed() {
+            return candidatesProbed.sum();
+        }
+
+        @Override
+        public long getFalseAlarms() {
+            return falseAlarms.sum();
+        }
+
+        @Override
+        public long getDesOperations() {
+            return desOperations.sum();
+        }
+
+        @Override
+        public long getDesOperationsPerQueryP50() {
+            return desOperationsPerQuery.percentile(0.5);
+        }
+
+        @Override
+        public long getDesOperationsPerQueryP99() {
+            return desOperationsPerQuery.percentile(0.99);
+        }
+
+        @Override
+        public long getLookupLatencyMicrosP50() {
+            return lookupLatencyMicros.percentile(0.5);
+        }
+
+        @Override
+        public long getLookupLatencyMicrosP99() {
+            return lookupLatencyMicros.percentile(0.99);
+        }
+
+        @Override
+        public long getLookupLatencyMicrosMax() {
+            return lookupLatencyMicros.max();
+        }
+    }
+}
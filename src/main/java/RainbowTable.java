@@ -1,146 +1,688 @@
-import keygenerators.IncrementalKeyGenerator;
-import keygenerators.KeyGenerator;
+import keygenerators.KeySpace;
+import tablestores.CompressedTableStore;
+import tablestores.ExternalSortBuilder;
+import tablestores.HashTableStore;
+import tablestores.MappedTableStore;
+import tablestores.TableStore;
 
 import java.io.*;
-import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 public class RainbowTable {
-    private final static int LOOKUP_TIMEOUT_SECS = 3600;
+    final static int LOOKUP_TIMEOUT_SECS = 3600;
+    private final static byte[] FILE_MAGIC = {'R', 'T', 'D', 'B'};
+    private final static int FILE_VERSION = 5; // 2: distinguished point digits in the header, 3: table index, 4: next start key, 5: layout
+    private final static int LAYOUT_RECORDS = 0; // fixed-width records, see MappedTableStore
+    private final static int LAYOUT_COMPRESSED = 1; // delta coded blocks, see CompressedTableStore
+    private final static int SEGMENT_CHAINS = 1 << 20; // start keys generated between two checkpoints
+    private final static int BATCH_CANDIDATES = 1 << 20; // end key candidates computed and sorted at once by lookupBatch
+    private final static int CANDIDATE_ID_BITS = 32;
+    private final static long CANDIDATE_ID_MASK = (1L << CANDIDATE_ID_BITS) - 1;
+    private final static long ABANDONED_CHAIN = -1L; // record of a chain which found no distinguished point within chainLength
+    private final static int EXHAUSTIVE_CHUNK_SLOTS = 256; // store slots replayed by one exhaustive lookup task
+    // Engines of the scheduler workers, each worker uses its own instances for all tables
+    private final static ThreadLocal<BitslicedDES> WORKER_BITSLICED_DES = ThreadLocal.withInitial(BitslicedDES::new);
+    private final static ThreadLocal<DES> WORKER_DES = ThreadLocal.withInitial(DES::new);
 
-    private final byte[] byteset;
-    private final int passwordLength;
-    private final int chainLength;
+    private final KeySpace keySpace;
+    private final int chainLength; // with distinguished points the maximum chain length
+    private final int dpDigits; // chains end at keys with this many trailing zero digits, 0 for fixed-length chains
+    private final long dpModulus;
+    private final int tableIndex; // tables of a set differ by the index, which selects their family of reduction functions
+    private final long reductionOffset;
     private final String plaintext;
-    private final BigInteger modulo;
-    private Map<ByteArrayWrapper, ByteArrayWrapper> table; // <K, V> == <endKey, startKey>
-    private final Object addLock;
+    private final long[] plaintextBlocks; // padded plaintext, shared read-only by all threads
+    private final long modulus;
+    private final long twoPow64Modulus; // 2^64 mod modulus, used to fold 64-bit cryptogram blocks
+    private TableStore table; // endKey -> startKey, keys as indices in the key space
+    private boolean offHeap;
+    private boolean perfect; // generate until numChains distinct end keys are stored
+    private int shard; // this table holds the chains of start keys of shard out of nShards equal ranges of numChains
+    private int nShards = 1;
+    private long nextStartKey = -1; // first start key not used for the chains of the table, -1 if unknown (older files)
+    private TableStore baseTable; // chains an extension starts from, see extend
+    private long baseChains; // chains the table had before the last generate call
+    private LongAdder generatedChains; // striped, so that counting finished chains never serialises generation threads
+    private LongAdder generatedLinks;
+    private long abandonedChains;
+    private File checkpointDirectory; // generation progress is saved there if set
+    private boolean resume;
+    private GenerationCheckpoint checkpoint;
+    private File externalSortDirectory; // if set, chains are sorted on disk instead of being kept in memory
+    private long externalSortMemory;
+    private ExternalSortBuilder externalSortBuilder;
+    private ComputeScheduler scheduler = ComputeScheduler.shared(); // runs generation and lookup work
+    private final Metrics metrics = Metrics.shared();
+    private Tracer tracer = Tracer.NONE; // told the phases of generation and lookup work
 
     public RainbowTable(int passwordLength, int chainLength, String plaintext) {
-        this.byteset = new byte[10];
-        for (int i = 0; i < byteset.length; i++) {
-            byteset[i] = (byte) (i + 48);
-        }
+        this(passwordLength, chainLength, plaintext, 0);
+    }
+
+    public RainbowTable(int passwordLength, int chainLength, String plaintext, int dpDigits) {
+        this(passwordLength, chainLength, plaintext, dpDigits, 0);
+    }
+
+    public RainbowTable(int passwordLength, int chainLength, String plaintext, int dpDigits, int tableIndex) {
+        this(new KeySpace(KeySpace.DIGITS.getCharset(), passwordLength), chainLength, plaintext, dpDigits, tableIndex);
+    }
 
-        this.passwordLength = passwordLength;
+    public RainbowTable(KeySpace keySpace, int chainLength, String plaintext, int dpDigits, int tableIndex) {
+        this.keySpace = keySpace;
         this.chainLength = chainLength;
         this.plaintext = plaintext;
+        this.plaintextBlocks = DES.toBlocks(plaintext);
+        if (dpDigits < 0 || dpDigits >= keySpace.getLength()) {
+            throw new IllegalArgumentException("Liczba cyfr punktu wyróżnionego musi być pomiędzy 0 a " + (keySpace.getLength() - 1));
+        }
+        this.dpDigits = dpDigits;
+        this.dpModulus = keySpace.power(dpDigits);
+
+        // At most Integer.MAX_VALUE (see KeySpace), which keeps every intermediate product of reduce() within a long
+        this.modulus = keySpace.size();
+        this.twoPow64Modulus = (Long.remainderUnsigned(-1L, modulus) + 1) % modulus;
 
-        this.modulo = getModulus();
-        this.addLock = new Object();
+        if (tableIndex < 0) {
+            throw new IllegalArgumentException("Indeks tablicy nie może być ujemny");
+        }
+        this.tableIndex = tableIndex;
+        // Table t reduces with the functions of positions t * chainLength .. (t + 1) * chainLength - 1, which no other table uses
+        this.reductionOffset = (long) tableIndex * chainLength % modulus;
     }
 
-    protected RainbowTable(int passwordLength, int chainLength, String plaintext, Map<ByteArrayWrapper, ByteArrayWrapper> table) {
-        this(passwordLength, chainLength, plaintext);
+    protected RainbowTable(KeySpace keySpace, int chainLength, String plaintext, int dpDigits, int tableIndex, TableStore table) {
+        this(keySpace, chainLength, plaintext, dpDigits, tableIndex);
         this.table = table;
     }
 
-    protected void generationThread(int numChains, int threadId, int threadCount) {
-        DES des = new DES(); // thread's private DES instance -- in order not to mix keys in one shared DES instance
-        KeyGenerator keyGenerator = new IncrementalKeyGenerator(byteset, threadId);
-        byte[] startKey, endKey;
-        boolean done = false;
+    /**
+     * Generates chains for start keys firstStartKey, firstStartKey + 1, ..., firstStartKey + count - 1 into
+     * records[offset .. offset + count - 1] as (endKey << bitsPerKey | startKey). Touches no shared state
+     * apart from the progress counters, so generation threads never wait for each other.
+     */
+    private void generationThread(long[] records, int offset, int count, long firstStartKey) {
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.GENERATION_SLICE);
+        try {
+            generateSlice(records, offset, count, firstStartKey, marks);
+        } finally {
+            marks.exit(Tracer.Phase.GENERATION_SLICE);
+        }
+    }
+
+    private void generateSlice(long[] records, int offset, int count, long firstStartKey, Tracer.Marks marks) {
+        BitslicedDES des = new BitslicedDES(); // thread's private instance, advances LANES chains at once
+        LongAdder workerChains = metrics.workerChains(workerId());
 
-        while (!done) {
-            startKey = keyGenerator.next((long) threadCount);
-            endKey = generateChain(des, startKey);
+        if (dpDigits > 0) {
+            generateDistinguishedChains(des, firstStartKey, records, offset, count, workerChains, marks);
+            return;
+        }
 
-            synchronized (addLock) {
-                if (table.size() < numChains) {
-                    table.put(new ByteArrayWrapper(endKey), new ByteArrayWrapper(startKey));
-                }
-                if (table.size() >= numChains) {
-                    done = true;
-                }
+        int bitsPerKey = getBitsPerKey();
+        byte[][] startKeys = new byte[BitslicedDES.LANES][DES.KEY_LENGTH];
+        long[] endKeys = new long[BitslicedDES.LANES];
+
+        for (int done = 0; done < count; done += BitslicedDES.LANES) {
+            // The last group may be partial, its surplus lanes repeat the last start key and are dropped
+            for (int lane = 0; lane < BitslicedDES.LANES; lane++) {
+                keySpace.indexToKey(firstStartKey + Math.min(done + lane, count - 1), startKeys[lane]);
+            }
+            generateChains(des, startKeys, endKeys, marks);
+
+            int n = Math.min(BitslicedDES.LANES, count - done);
+            for (int lane = 0; lane < n; lane++) {
+                records[offset + done + lane] = (endKeys[lane] << bitsPerKey) | (firstStartKey + done + lane);
             }
+            generatedChains.add(n);
+            generatedLinks.add((long) n * chainLength);
+            metrics.chainsGenerated(n, (long) n * chainLength);
+            workerChains.add(n);
         }
     }
 
-    public void generate(int numChains, int threadCount) throws InterruptedException {
-        Thread[] threads = new Thread[threadCount];
+    /**
+     * Every lane follows its chain until the reduced key is a distinguished point and then takes the next start key,
+     * so lanes stay busy although the chains differ in length. Chains longer than chainLength are abandoned.
+     */
+    private void generateDistinguishedChains(BitslicedDES des, long firstStartKey, long[] records, int offset, int count,
+                                             LongAdder workerChains, Tracer.Marks marks) {
+        int nBlocks = plaintextBlocks.length;
+        int bitsPerKey = getBitsPerKey();
+        long[] keys = new long[BitslicedDES.LANES];
+        long[] cryptograms = new long[BitslicedDES.LANES * nBlocks];
+        long[] startKeys = new long[BitslicedDES.LANES];
+        int[] chainNumbers = new int[BitslicedDES.LANES]; // record of the lane's chain, -1 once the lane has run out of work
+        int[] lengths = new int[BitslicedDES.LANES];
+        byte[] key = new byte[DES.KEY_LENGTH];
+        int nextChain = 0, activeLanes = 0;
+
+        for (int lane = 0; lane < BitslicedDES.LANES; lane++) {
+            chainNumbers[lane] = -1;
+            if (nextChain < count) {
+                startChain(firstStartKey, lane, nextChain++, keys, startKeys, chainNumbers, lengths, key);
+                activeLanes++;
+            }
+        }
+
+        while (activeLanes > 0) {
+            marks.enter(Tracer.Phase.ENCRYPT);
+            des.encrypt(keys, plaintextBlocks, cryptograms);
+            marks.exit(Tracer.Phase.ENCRYPT);
 
-        table = new ConcurrentHashMap<>(numChains);
+            marks.enter(Tracer.Phase.REDUCE); // with the bookkeeping of finished chains
+            for (int lane = 0; lane < BitslicedDES.LANES; lane++) {
+                if (chainNumbers[lane] < 0) {
+                    continue;
+                }
+
+                long index = reduce(cryptograms, lane * nBlocks, nBlocks, 0, key);
+                lengths[lane]++;
+
+                if (isDistinguished(index) || lengths[lane] == chainLength) {
+                    records[offset + chainNumbers[lane]] = isDistinguished(index)
+                            ? (index << bitsPerKey) | startKeys[lane]
+                            : ABANDONED_CHAIN;
+                    generatedChains.increment();
+                    generatedLinks.add(lengths[lane]);
+                    metrics.chainsGenerated(1, lengths[lane]);
+                    workerChains.increment();
+                    if (!isDistinguished(index)) {
+                        metrics.abandonedChain();
+                    }
 
-        for (int i = 0; i < threadCount; i++) {
-            int finalI = i;
-            threads[i] = new Thread(() -> generationThread(numChains, finalI, threadCount));
-            threads[i].start();
+                    if (nextChain < count) {
+                        startChain(firstStartKey, lane, nextChain++, keys, startKeys, chainNumbers, lengths, key);
+                    } else {
+                        chainNumbers[lane] = -1;
+                        activeLanes--;
+                    }
+                } else {
+                    keys[lane] = DESEngine.toLong(key, 0);
+                }
+            }
+            marks.exit(Tracer.Phase.REDUCE);
         }
+    }
 
+    private void startChain(long firstStartKey, int lane, int chainNumber, long[] keys, long[] startKeys,
+                            int[] chainNumbers, int[] lengths, byte[] key) {
+        keySpace.indexToKey(firstStartKey + chainNumber, key);
+        keys[lane] = DESEngine.toLong(key, 0);
+        startKeys[lane] = firstStartKey + chainNumber;
+        chainNumbers[lane] = chainNumber;
+        lengths[lane] = 0;
+    }
+
+    public void generate(int numChains, int threadCount) throws InterruptedException {
         ScheduledExecutorService progressExecutor = Executors.newSingleThreadScheduledExecutor();
+        generatedChains = new LongAdder();
+        generatedLinks = new LongAdder();
+        long shardChains = shardStartKey(numChains, shard + 1) - shardStartKey(numChains, shard);
         progressExecutor.scheduleAtFixedRate(() -> {
-            double progressPercent = (double) table.size() / (numChains) * 100;
+            double progressPercent = (double) generatedChains.sum() / shardChains * 100;
             System.out.println("Postęp generowania: " + String.format("%.2f", progressPercent) + "%");
         }, 10000, 10000, TimeUnit.MILLISECONDS);
 
-        for (Thread t : threads) {
-            t.join();
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.GENERATE);
+        try {
+            generateInRounds(numChains, threadCount);
+        } finally {
+            progressExecutor.shutdownNow();
+            marks.exit(Tracer.Phase.GENERATE);
         }
-
-        progressExecutor.shutdownNow();
     }
 
     public void generate(int numChains) {
-        generationThread(numChains, 0, 1);
+        generatedChains = new LongAdder();
+        generatedLinks = new LongAdder();
+
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.GENERATE);
+        try {
+            generateInRounds(numChains, 1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            marks.exit(Tracer.Phase.GENERATE);
+        }
+    }
+
+    /**
+     * Adds chains of numChains further start keys to the chains of the table (e.g. one read from a file), continuing the
+     * sequence of start keys where the generation of the table stopped (see getNextStartKey). As in generate, the chain
+     * with the lowest start key is kept for every end key, so the existing chains are never replaced.
+     */
+    public void extend(int numChains, int threadCount) throws InterruptedException {
+        if (table == null) {
+            throw new IllegalStateException("Table not generated");
+        }
+
+        baseTable = table;
+        try {
+            generate(numChains, threadCount);
+        } finally {
+            baseTable = null;
+        }
+    }
+
+    private void generateInRounds(int numChains, int threadCount) throws InterruptedException {
+        long startKeyBase = baseTable != null ? getNextStartKey() : 0;
+        long nextStartKey = startKeyBase + shardStartKey(numChains, shard);
+        long endStartKey = startKeyBase + shardStartKey(numChains, shard + 1);
+
+        if (perfect && externalSortDirectory != null) {
+            // Counting distinct end keys would need the chains in memory
+            throw new IllegalStateException("Tablica doskonała nie może być budowana przez sortowanie zewnętrzne");
+        }
+        if (perfect && nShards > 1) {
+            // Replacement chains come from start keys beyond numChains, which the other shards would use as well
+            throw new IllegalStateException("Tablica doskonała nie może być budowana we fragmentach");
+        }
+
+        abandonedChains = 0;
+        baseChains = baseTable != null ? baseTable.size() : 0;
+
+        try {
+            if (externalSortDirectory != null) {
+                externalSortBuilder = new ExternalSortBuilder(externalSortDirectory, externalSortMemory, getBitsPerKey());
+                if (baseTable != null) {
+                    externalSortBuilder.addAll(baseTable);
+                }
+                table = null;
+            } else {
+                table = new HashTableStore(baseChains + endStartKey - nextStartKey, getBitsPerKey(), offHeap);
+                if (baseTable != null) {
+                    baseTable.forEach(table::put);
+                }
+            }
+
+            if (checkpointDirectory != null) {
+                checkpoint = openCheckpoint(numChains, startKeyBase);
+                checkpoint.replay(record -> {
+                    generatedChains.increment();
+                    addRecord(record);
+                });
+                nextStartKey = Math.max(nextStartKey, checkpoint.getNextStartKey()); // a new checkpoint starts at 0, not at the shard
+                generatedLinks.add(checkpoint.getGeneratedLinks());
+            }
+
+            // Without perfect mode numChains start keys are used (the shard's range of them). In perfect mode chains lost to end key
+            // collisions (or abandoned) are replaced with chains from further start keys, until the table is full or the start keys run out.
+            // Start keys are taken in segments, which bounds the records kept outside the table and the work lost in a crash
+            while (nextStartKey < modulus && (perfect ? table.size() < baseChains + numChains : nextStartKey < endStartKey)) {
+                long remaining = perfect ? baseChains + numChains - table.size() : endStartKey - nextStartKey;
+                int count = (int) Math.min(Math.min(remaining, SEGMENT_CHAINS), modulus - nextStartKey);
+
+                long[] records = generateSegment(nextStartKey, count, threadCount);
+                nextStartKey += count;
+                if (checkpoint != null) {
+                    checkpoint.addSegment(records, nextStartKey, generatedLinks.sum());
+                }
+
+                // Merged in start key order and the first chain for every end key is kept,
+                // so the table does not depend on the number of threads nor on segment boundaries
+                for (long record : records) {
+                    addRecord(record);
+                }
+            }
+
+            if (externalSortBuilder != null) {
+                table = externalSortBuilder.build();
+                metrics.endPointCollisions(getMergedChains()); // dropped by the merge, not one by one
+            }
+            // A shard records the end of the start keys of all shards, so that extending it does not repeat the chains of the others
+            this.nextStartKey = Math.max(nextStartKey, startKeyBase + numChains);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Błąd plików roboczych generowania: " + e.getMessage(), e);
+        }
+    }
+
+    // First start key of the shard, shards are contiguous ranges of the numChains start keys
+    private long shardStartKey(int numChains, int shard) {
+        return (long) numChains * shard / nShards;
+    }
+
+    private GenerationCheckpoint openCheckpoint(int numChains, long startKeyBase) throws IOException {
+        Properties parameters = new Properties();
+        parameters.setProperty("passwordLength", Integer.toString(keySpace.getLength()));
+        if (!keySpace.isDefault()) {
+            parameters.setProperty("charset", new String(keySpace.getCharset(), StandardCharsets.ISO_8859_1));
+        }
+        parameters.setProperty("chainLength", Integer.toString(chainLength));
+        parameters.setProperty("plaintext", plaintext);
+        parameters.setProperty("distinguishedPointDigits", Integer.toString(dpDigits));
+        parameters.setProperty("tableIndex", Integer.toString(tableIndex));
+        parameters.setProperty("nChains", Integer.toString(numChains));
+        parameters.setProperty("perfect", Boolean.toString(perfect));
+        if (nShards > 1) {
+            parameters.setProperty("shard", shard + "/" + nShards);
+        }
+        if (baseTable != null) {
+            parameters.setProperty("extendedChains", Long.toString(baseChains));
+            parameters.setProperty("firstStartKey", Long.toString(startKeyBase));
+        }
+
+        return resume
+                ? GenerationCheckpoint.resume(checkpointDirectory, parameters)
+                : GenerationCheckpoint.create(checkpointDirectory, parameters);
+    }
+
+    // Records of start keys firstStartKey .. firstStartKey + count - 1, split into threadCount contiguous slices
+    private long[] generateSegment(long firstStartKey, int count, int threadCount) throws InterruptedException {
+        long[] records = new long[count];
+
+        scheduler.runChunks(threadCount, threadCount, slice -> {
+            int from = (int) (count * slice / threadCount);
+            int to = (int) (count * (slice + 1) / threadCount);
+            generationThread(records, from, to - from, firstStartKey + from);
+        });
+
+        return records;
+    }
+
+    private void addRecord(long record) throws IOException {
+        if (record == ABANDONED_CHAIN) {
+            abandonedChains++;
+        } else if (externalSortBuilder != null) {
+            externalSortBuilder.add(record); // sorting by record keeps the lowest start key for every end key, as putIfAbsent does
+        } else {
+            int bitsPerKey = getBitsPerKey();
+            if (!table.putIfAbsent(record >>> bitsPerKey, record & ((1L << bitsPerKey) - 1))) {
+                metrics.endPointCollisions(1);
+            }
+        }
     }
 
-    private byte[] generateChain(DES des, byte[] startKey) {
-        String cryptogram;
-        byte[] endKey = startKey;
+    private void generateChains(BitslicedDES des, byte[][] startKeys, long[] endKeys, Tracer.Marks marks) {
+        int nBlocks = plaintextBlocks.length;
+        long[] keys = new long[BitslicedDES.LANES];
+        long[] cryptograms = new long[BitslicedDES.LANES * nBlocks];
+        byte[] key = new byte[DES.KEY_LENGTH];
+
+        for (int lane = 0; lane < BitslicedDES.LANES; lane++) {
+            keys[lane] = DESEngine.toLong(startKeys[lane], 0);
+        }
 
         for (int i = 0; i < chainLength; i++) {
-            des.initializeEncryptor(endKey);
-            cryptogram = des.encrypt(plaintext);
-            endKey = reduce(cryptogram, i);
+            marks.enter(Tracer.Phase.ENCRYPT);
+            des.encrypt(keys, plaintextBlocks, cryptograms);
+            marks.exit(Tracer.Phase.ENCRYPT);
+
+            marks.enter(Tracer.Phase.REDUCE);
+            for (int lane = 0; lane < BitslicedDES.LANES; lane++) {
+                reduce(cryptograms, lane * nBlocks, nBlocks, i, key);
+                keys[lane] = DESEngine.toLong(key, 0);
+            }
+            marks.exit(Tracer.Phase.REDUCE);
         }
 
-        return endKey;
+        for (int lane = 0; lane < BitslicedDES.LANES; lane++) {
+            DESEngine.toBytes(keys[lane], key, 0);
+            endKeys[lane] = keyToIndex(key);
+        }
     }
 
-    private byte[] reduce(String cryptogram, int position) {
-        // Convert hex string into decimal value
-        BigInteger temp = new BigInteger(cryptogram, 16);
-        // Reduction output depends on the chain position
-        temp = temp.add(BigInteger.valueOf(position));
-        temp = temp.mod(modulo);
+    /**
+     * Interprets the cryptogram as one big-endian number, adds the chain position (shifted by the table index) and takes the result modulo
+     * the size of the key space. The key with the resulting index is written to key,
+     * the result is also returned as a key index. Package-private, so that the benchmarks can measure it.
+     */
+    long reduce(long[] cryptogram, int offset, int length, int position, byte[] key) {
+        long value = 0;
+
+        for (int i = 0; i < length; i++) {
+            value = (value * twoPow64Modulus + Long.remainderUnsigned(cryptogram[offset + i], modulus)) % modulus;
+        }
+        // Reduction output depends on the chain position and the table
+        value = (value + position + reductionOffset) % modulus;
+
+        keySpace.indexToKey(value, key);
+        return value;
+    }
 
-        return new IncrementalKeyGenerator(byteset, temp).next(0L);
+    // Position passed to reduce: chains ending at distinguished points use a single reduction function,
+    // since lookup does not know at which position of the chain the cryptogram was produced
+    private int reductionPosition(int position) {
+        return dpDigits > 0 ? 0 : position;
     }
 
-    protected BigInteger getModulus() {
-        return BigInteger.valueOf(byteset.length).pow(passwordLength);
+    private boolean isDistinguished(long index) {
+        return index % dpModulus == 0;
     }
 
-    public void saveToFile(String pathname) {
-        if (table == null || table.size() == 0) {
+    private void indexToKey(long index, byte[] key) {
+        keySpace.indexToKey(index, key);
+    }
+
+    private long keyToIndex(byte[] key) {
+        return keySpace.keyToIndex(key);
+    }
+
+    private int getBitsPerKey() {
+        return keySpace.getBitsPerKey();
+    }
+
+    protected long getModulus() {
+        return modulus;
+    }
+
+    public boolean saveToFile(String pathname) {
+        return saveToFile(pathname, false);
+    }
+
+    // Binary file with the chains either as fixed-width records or compressed (smaller, but slower to look up)
+    public boolean saveToFile(String pathname, boolean compressed) {
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.SAVE);
+        try {
+            return writeBinaryFile(pathname, compressed);
+        } finally {
+            marks.exit(Tracer.Phase.SAVE);
+        }
+    }
+
+    private boolean writeBinaryFile(String pathname, boolean compressed) {
+        if (getTableSize() == 0) {
             throw new IllegalStateException("Table not generated");
         }
 
-        File out = new File(pathname);
-        FileWriter fw;
+        int bitsPerKey = getBitsPerKey();
+        int recordBytes = MappedTableStore.recordBytes(bitsPerKey);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(pathname)))) {
+            out.write(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(chainLength);
+            out.writeInt(dpDigits);
+            out.writeInt(tableIndex);
+            out.writeLong(getNextStartKey());
+            out.writeInt(keySpace.getLength());
+            out.writeUTF(plaintext);
+            out.writeInt(keySpace.getRadix());
+            out.write(keySpace.getCharset());
+            out.writeInt(bitsPerKey);
+            out.writeLong(table.size());
+            out.writeInt(compressed ? LAYOUT_COMPRESSED : LAYOUT_RECORDS);
+
+            // Chains in end key order
+            Consumer<TableStore.ChainVisitor> sortedChains;
+            if (table.isSorted()) {
+                // E.g. built by external sort, streamed without loading the chains into memory
+                sortedChains = table::forEach;
+            } else {
+                long[] records = new long[Math.toIntExact(getTableSize())]; // an unsorted store is a hash table, held in memory
+                int[] count = {0};
+                long keyMask = (1L << bitsPerKey) - 1;
+
+                table.forEach((endKey, startKey) -> records[count[0]++] = (endKey << bitsPerKey) | startKey);
+                Arrays.sort(records); // by end key, since it occupies the high bits
+
+                sortedChains = visitor -> {
+                    for (long record : records) {
+                        visitor.visit(record >>> bitsPerKey, record & keyMask);
+                    }
+                };
+            }
+
+            if (compressed) {
+                CompressedTableStore.write(out, bitsPerKey, sortedChains);
+            } else {
+                sortedChains.accept((endKey, startKey) -> writeRecord(out, (endKey << bitsPerKey) | startKey, recordBytes));
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Błąd podczas zapisywania do pliku: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    private static void writeRecord(DataOutputStream out, long record, int recordBytes) {
+        try {
+            for (int k = recordBytes - 1; k >= 0; k--) {
+                out.write((int) (record >>> (8 * k)));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    public boolean exportToTextFile(String pathname) {
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.EXPORT);
         try {
-            fw = new FileWriter(out);
+            return writeTextFile(pathname);
+        } finally {
+            marks.exit(Tracer.Phase.EXPORT);
+        }
+    }
+
+    private boolean writeTextFile(String pathname) {
+        if (getTableSize() == 0) {
+            throw new IllegalStateException("Table not generated");
+        }
 
+        try (PrintWriter fw = new PrintWriter(new BufferedWriter(new FileWriter(pathname)))) {
             fw.write("chainLength=" + chainLength + "\n");
             fw.write("plaintext=" + plaintext + "\n");
-            for (Map.Entry<ByteArrayWrapper, ByteArrayWrapper> entry : table.entrySet()) {
-                fw.write(new String(entry.getKey().get())); // endKey
-                fw.write(" ");
-                fw.write(new String(entry.getValue().get())); // startKey
-                fw.write("\n");
+            if (dpDigits > 0) {
+                fw.write("distinguishedPointDigits=" + dpDigits + "\n");
+            }
+            if (tableIndex > 0) {
+                fw.write("tableIndex=" + tableIndex + "\n");
+            }
+            fw.write("nextStartKey=" + getNextStartKey() + "\n");
+            if (!keySpace.isDefault()) {
+                fw.write("charset=" + new String(keySpace.getCharset(), StandardCharsets.ISO_8859_1) + "\n");
+                fw.write("passwordLength=" + keySpace.getLength() + "\n");
+            }
+
+            byte[] endKeyBytes = new byte[DES.KEY_LENGTH], startKeyBytes = new byte[DES.KEY_LENGTH];
+            table.forEach((endKey, startKey) -> {
+                indexToKey(endKey, endKeyBytes);
+                indexToKey(startKey, startKeyBytes);
+                fw.write(new String(endKeyBytes) + " " + new String(startKeyBytes) + "\n");
+            });
+
+            if (fw.checkError()) {
+                throw new IOException("nie udało się zapisać wszystkich łańcuchów");
             }
-            fw.close();
         } catch (IOException e) {
             System.err.println("Błąd podczas zapisywania do pliku: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    // Reads the table as readFromFile(pathname) does, within the LOAD phase of tracer, which the table then keeps
+    public static RainbowTable readFromFile(String pathname, Tracer tracer) throws IOException {
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.LOAD);
+        try {
+            RainbowTable rainbowTable = readFromFile(pathname);
+            rainbowTable.setTracer(tracer);
+            return rainbowTable;
+        } finally {
+            marks.exit(Tracer.Phase.LOAD);
         }
     }
 
     public static RainbowTable readFromFile(String pathname) throws IOException {
-        // NOTE: not thread-safe, write with one thread only
-        Map<ByteArrayWrapper, ByteArrayWrapper> table = new HashMap<>();
+        byte[] magic = new byte[FILE_MAGIC.length];
+        int read;
+
+        try (InputStream in = new FileInputStream(pathname)) {
+            read = in.read(magic);
+        }
+
+        if (read == magic.length && Arrays.equals(magic, FILE_MAGIC)) {
+            return readFromBinaryFile(pathname);
+        }
+        return importFromTextFile(pathname);
+    }
+
+    private static RainbowTable readFromBinaryFile(String pathname) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(pathname), StandardOpenOption.READ)) {
+            // Unbuffered, so that the channel position is exactly at the first record after reading the header
+            DataInputStream in = new DataInputStream(Channels.newInputStream(channel));
+
+            in.readFully(new byte[FILE_MAGIC.length]);
+            int version = in.readInt();
+            if (version < 1 || version > FILE_VERSION) {
+                throw new IOException("Nieobsługiwana wersja pliku tablicy: " + version);
+            }
+
+            int chainLength = in.readInt();
+            int dpDigits = version >= 2 ? in.readInt() : 0;
+            int tableIndex = version >= 3 ? in.readInt() : 0;
+            long nextStartKey = version >= 4 ? in.readLong() : -1;
+            int passwordLength = in.readInt();
+            String plaintext = in.readUTF();
+            byte[] byteset = new byte[in.readInt()];
+            in.readFully(byteset);
+            int bitsPerKey = in.readInt();
+            long nChains = in.readLong();
+            int layout = version >= 5 ? in.readInt() : LAYOUT_RECORDS;
+
+            RainbowTable rainbowTable;
+            try {
+                rainbowTable = new RainbowTable(new KeySpace(byteset, passwordLength), chainLength, plaintext, dpDigits, tableIndex);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Nieobsługiwana przestrzeń kluczy: " + e.getMessage());
+            }
+            // Older files may use wider records than needed (start keys used to span all KEY_LENGTH characters)
+            if (bitsPerKey < rainbowTable.getBitsPerKey() || 2 * bitsPerKey > Long.SIZE - 1) {
+                throw new IOException("Nieobsługiwana liczba bitów klucza: " + bitsPerKey);
+            }
+
+            // Mapping stays valid after the channel is closed
+            switch (layout) {
+                case LAYOUT_RECORDS:
+                    rainbowTable.table = new MappedTableStore(channel, channel.position(), nChains, bitsPerKey);
+                    break;
+                case LAYOUT_COMPRESSED:
+                    rainbowTable.table = new CompressedTableStore(channel, channel.position());
+                    break;
+                default:
+                    throw new IOException("Nieobsługiwany układ pliku tablicy: " + layout);
+            }
+            rainbowTable.nextStartKey = nextStartKey;
+            return rainbowTable;
+        }
+    }
+
+    private static RainbowTable importFromTextFile(String pathname) throws IOException {
         BufferedReader reader;
         int nLines = 0;
         Integer chainLength = null;
@@ -168,8 +710,51 @@ public class RainbowTable {
             throw new RuntimeException("Nie udało się wczytać tekstu jawnego z pliku");
         }
 
-        while ((line = reader.readLine()) != null) {
+        if (chainLength == null) {
+            throw new RuntimeException("Nie udało się wczytać długości łańcucha z pliku");
+        }
+
+        int dpDigits = 0;
+        line = reader.readLine();
+        nLines++;
+        if (line != null && line.startsWith("distinguishedPointDigits=")) {
+            dpDigits = Integer.parseInt(line.replaceFirst("^distinguishedPointDigits=", ""));
+            line = reader.readLine();
+            nLines++;
+        }
+
+        int tableIndex = 0;
+        if (line != null && line.startsWith("tableIndex=")) {
+            tableIndex = Integer.parseInt(line.replaceFirst("^tableIndex=", ""));
+            line = reader.readLine();
+            nLines++;
+        }
+
+        long nextStartKey = -1;
+        if (line != null && line.startsWith("nextStartKey=")) {
+            nextStartKey = Long.parseLong(line.replaceFirst("^nextStartKey=", ""));
+            line = reader.readLine();
             nLines++;
+        }
+
+        KeySpace keySpace = KeySpace.DIGITS;
+        if (line != null && line.startsWith("charset=")) {
+            byte[] charset = line.replaceFirst("^charset=", "").getBytes(StandardCharsets.ISO_8859_1);
+            line = reader.readLine();
+            nLines++;
+            if (line == null || !line.startsWith("passwordLength=")) {
+                throw new RuntimeException("Brak długości hasła po zestawie znaków, linia " + nLines);
+            }
+            keySpace = new KeySpace(charset, Integer.parseInt(line.replaceFirst("^passwordLength=", "")));
+            line = reader.readLine();
+            nLines++;
+        }
+
+        RainbowTable rainbowTable = new RainbowTable(keySpace, chainLength, plaintext, dpDigits, tableIndex);
+        rainbowTable.table = new HashTableStore(0, rainbowTable.getBitsPerKey(), false);
+        rainbowTable.nextStartKey = nextStartKey;
+
+        for (; line != null; line = reader.readLine(), nLines++) {
             keys = line.split(" ");
 
             if (keys.length != 2) {
@@ -183,14 +768,15 @@ public class RainbowTable {
             endKey = keys[0].getBytes();
             startKey = keys[1].getBytes();
 
-            table.put(new ByteArrayWrapper(endKey), new ByteArrayWrapper(startKey));
-        }
+            if (!keySpace.isValidKey(endKey) || !keySpace.isValidKey(startKey)) {
+                throw new RuntimeException("Niedozwolony znak klucza w pliku, linia " + nLines);
+            }
 
-        if (chainLength == null) {
-            throw new RuntimeException("Nie udało się wczytać długości łańcucha z pliku");
+            rainbowTable.table.put(rainbowTable.keyToIndex(endKey), rainbowTable.keyToIndex(startKey));
         }
+        reader.close();
 
-        return new RainbowTable(DES.KEY_LENGTH, chainLength, plaintext, table);
+        return rainbowTable;
     }
 
     public byte[] lookup(String ciphertext) {
@@ -198,80 +784,469 @@ public class RainbowTable {
     }
 
     public byte[] lookup(String cryptogramToCrack, int threadCount) {
-        ExecutorService pool = Executors.newFixedThreadPool(threadCount);
-        DES[] deses = new DES[threadCount]; // Separate instance for each thread
-        Runnable[] tasks = new Runnable[table.size()];
-        int chainNumber = 0;
-        AtomicInteger lookedChainsAtomic = new AtomicInteger();
-        final byte[][] foundKey = new byte[1][]; // Array of byte[] because it needs to be final in order to access it from lambda expression
-        foundKey[0] = null;
-
-        for (int i = 0; i < threadCount; i++) {
-            deses[i] = new DES();
-        }
-
-        for (ByteArrayWrapper startKey : table.values()) {
-            tasks[chainNumber] = () -> {
-                int threadId = (int) Thread.currentThread().getId() % threadCount;
-                byte[] lookup = lookupChain(deses[threadId], startKey.get(), cryptogramToCrack);
+        long startNanos = System.nanoTime();
+        LookupResult result = new LookupResult();
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.LOOKUP);
+        try {
+            lookup(Hex.hexStringToBlocks(cryptogramToCrack), threadCount, result);
+        } finally {
+            marks.exit(Tracer.Phase.LOOKUP);
+        }
+        metrics.queryFinished(result, System.nanoTime() - startNanos);
+        return result.get();
+    }
+
+    // The key is also published to result, which is abandoned if the lookup does not finish
+    byte[] lookup(long[] cryptogramBlocks, int threadCount, LookupResult result) {
+        if (dpDigits > 0) {
+            // A single walk to the next distinguished point, nothing to split between threads
+            byte[] lookup = lookupDistinguished(new DES(), cryptogramBlocks, result);
+            if (lookup != null) {
+                result.publish(lookup);
+            }
+            return lookup;
+        }
+
+        LongAdder checkedPositions = new LongAdder();
+        int nGroups = (chainLength + BitslicedDES.LANES - 1) / BitslicedDES.LANES;
+
+        // Group g holds LANES positions downwards from chainLength - 1 - g * LANES, low groups have the shortest walks
+        ComputeScheduler.ChunkAction checkGroup = group -> {
+            int top = chainLength - 1 - (int) group * BitslicedDES.LANES;
+            byte[] lookup = lookupPositions(WORKER_BITSLICED_DES.get(), WORKER_DES.get(), cryptogramBlocks, top, result);
+            if (lookup != null && result.publish(lookup)) {
+                System.out.println("Wątek " + workerId() + " znalazł klucz.");
+            }
+
+            checkedPositions.add(Math.min(BitslicedDES.LANES, top + 1));
+        };
+
+        System.out.println("Liczba wątków przeszukujących tablicę: " + Math.min(threadCount, scheduler.getParallelism()));
+        runLookup(nGroups, checkGroup, threadCount, result, () -> {
+            double progressPercent = (double) checkedPositions.sum() / chainLength * 100;
+            System.out.println("Sprawdzono pozycji w łańcuchu: " + String.format("%.2f", progressPercent) + "%");
+        });
+
+        return result.get();
+    }
+
+    /**
+     * Runs the chunks on the scheduler with at most threadCount of its workers and returns once they have finished,
+     * within a poll of the workers after the first key is published, or after LOOKUP_TIMEOUT_SECS.
+     * Progress is printed every second.
+     */
+    private void runLookup(long nChunks, ComputeScheduler.ChunkAction action, int threadCount, LookupResult result, Runnable progress) {
+        ScheduledExecutorService progressExecutor = Executors.newSingleThreadScheduledExecutor();
+        progressExecutor.scheduleAtFixedRate(progress, 1000, 1000, TimeUnit.MILLISECONDS);
+
+        try {
+            scheduler.runChunks(nChunks, threadCount, result::isCancelled, action, LOOKUP_TIMEOUT_SECS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            System.out.println("Przekroczono maksymalny czas przeszukiwania: " + LOOKUP_TIMEOUT_SECS + "s");
+            result.abandon();
+        } catch (InterruptedException e) {
+            System.err.println("Przerwano przeszukiwanie tablicy");
+            result.abandon();
+        } finally {
+            result.cancel(); // after a timeout or an interrupt the workers stop at their next poll
+            progressExecutor.shutdownNow();
+        }
+    }
+
+    private static int workerId() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof ForkJoinWorkerThread ? ((ForkJoinWorkerThread) thread).getPoolIndex() : 0;
+    }
+
+    /**
+     * Lookup of one cryptogram split into independent tasks, so that tasks of several tables can share one pool.
+     * Every task checks a group of LANES positions (or walks to the distinguished point), cheapest walks come first.
+     * The first confirmed key is published to result, which stops the remaining tasks.
+     */
+    List<Runnable> lookupTasks(long[] cryptogramBlocks, LookupResult result) {
+        List<Runnable> tasks = new ArrayList<>();
+
+        if (dpDigits > 0) {
+            tasks.add(() -> {
+                byte[] lookup = result.isCancelled() ? null : lookupDistinguished(WORKER_DES.get(), cryptogramBlocks, result);
                 if (lookup != null) {
-                    foundKey[0] = lookup;
-                    System.out.println("Wątek " + Thread.currentThread().getId() % threadCount + " znalazł klucz. Zamykanie puli wątków.");
-                    pool.shutdownNow();
+                    result.publish(lookup);
                 }
+            });
+            return tasks;
+        }
 
-                lookedChainsAtomic.getAndIncrement();
-            };
-            chainNumber++;
+        for (int top = chainLength - 1; top >= 0; top -= BitslicedDES.LANES) {
+            int topPosition = top;
+            tasks.add(() -> {
+                byte[] lookup = result.isCancelled() ? null
+                        : lookupPositions(WORKER_BITSLICED_DES.get(), WORKER_DES.get(), cryptogramBlocks, topPosition, result);
+                if (lookup != null) {
+                    result.publish(lookup);
+                }
+            });
         }
+        return tasks;
+    }
 
-        ScheduledExecutorService progressExecutor = Executors.newSingleThreadScheduledExecutor();
-        progressExecutor.scheduleAtFixedRate(() -> {
-            double progressPercent = (double) lookedChainsAtomic.get() / (table.size()) * 100;
-            System.out.println("Przeszukano: " + String.format("%.2f", progressPercent) + "%");
-        }, 1000, 1000, TimeUnit.MILLISECONDS);
+    private byte[] lookupPositions(BitslicedDES bitslicedDes, DES des, long[] cryptogramBlocks, int topPosition, LookupResult result) {
+        long[] endKeys = new long[BitslicedDES.LANES];
+        int nLanes = walkToEnd(bitslicedDes, cryptogramBlocks, topPosition, endKeys, result);
+        byte[] startKey = new byte[DES.KEY_LENGTH];
+        int lane = 0, falseAlarms = 0;
+        byte[] lookup = null;
+        Tracer.Marks marks = tracer.marks();
+
+        for (; lane < nLanes && lookup == null && !result.isCancelled(); lane++) {
+            marks.enter(Tracer.Phase.INDEX_PROBE);
+            long startKeyIndex = table.get(endKeys[lane]);
+            marks.exit(Tracer.Phase.INDEX_PROBE);
+
+            // Matching end key may be a false alarm (merged chains), so the chain has to be regenerated to confirm it
+            if (startKeyIndex != TableStore.NOT_FOUND) {
+                indexToKey(startKeyIndex, startKey);
+                lookup = lookupChain(des, startKey, cryptogramBlocks, topPosition - lane, result);
+                if (lookup == null && !result.isCancelled()) {
+                    falseAlarms++;
+                }
+            }
+        }
+
+        result.countCandidates(lane);
+        result.countFalseAlarms(falseAlarms);
+        return lookup;
+    }
+
+    /**
+     * Lane l assumes the cryptogram was produced at position (topPosition - l) and walks forward to the end of the chain.
+     * End keys are written to endKeys as key indices, the number of lanes used is returned (0 if the lookup was cancelled).
+     */
+    private int walkToEnd(BitslicedDES bitslicedDes, long[] cryptogramBlocks, int topPosition, long[] endKeys, LookupResult result) {
+        int nBlocks = plaintextBlocks.length;
+        int nLanes = Math.min(BitslicedDES.LANES, topPosition + 1);
+        long[] keys = new long[BitslicedDES.LANES];
+        long[] cryptograms = new long[BitslicedDES.LANES * nBlocks];
+        byte[] key = new byte[DES.KEY_LENGTH];
 
-        for (Runnable task : tasks) {
-            pool.execute(task);
+        for (int lane = 0; lane < nLanes; lane++) {
+            endKeys[lane] = reduce(cryptogramBlocks, 0, cryptogramBlocks.length, topPosition - lane, key);
+            keys[lane] = DESEngine.toLong(key, 0);
         }
-        System.out.println("Liczba wątków przeszukujących tablicę: " + threadCount);
-        pool.shutdown(); // Execute all initiated tasks and shutdown the pool
 
-        try {
-            boolean terminatedSuccessfully = pool.awaitTermination(LOOKUP_TIMEOUT_SECS, TimeUnit.SECONDS);
-            if (!terminatedSuccessfully) {
-                System.out.println("Przekroczono maksymalny czas przeszukiwania: " + LOOKUP_TIMEOUT_SECS + "s");
+        // Lanes join the walk one column after another, a lane ignores the encryptions done before its own position
+        Tracer.Marks marks = tracer.marks();
+        int firstColumn = topPosition - nLanes + 2, j = firstColumn;
+        for (; j < chainLength && !result.isCancelled(); j++) {
+            marks.enter(Tracer.Phase.ENCRYPT);
+            bitslicedDes.encrypt(keys, plaintextBlocks, cryptograms);
+            marks.exit(Tracer.Phase.ENCRYPT);
+
+            marks.enter(Tracer.Phase.REDUCE);
+            for (int lane = Math.max(0, topPosition - j + 1); lane < nLanes; lane++) {
+                endKeys[lane] = reduce(cryptograms, lane * nBlocks, nBlocks, j, key);
+                keys[lane] = DESEngine.toLong(key, 0);
             }
-        } catch (InterruptedException e) {
-            System.err.println("Przerwano przeszukiwanie tablicy");
+            marks.exit(Tracer.Phase.REDUCE);
+        }
+
+        result.countDesOperations((long) Math.max(0, j - firstColumn) * BitslicedDES.LANES);
+        return j < chainLength ? 0 : nLanes;
+    }
+
+    private byte[] lookupDistinguished(DES des, long[] cryptogramBlocks, LookupResult result) {
+        long endKey = walkToDistinguished(des, cryptogramBlocks, result);
+        if (endKey == TableStore.NOT_FOUND) {
+            return null;
+        }
+
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.INDEX_PROBE);
+        long startKey = table.get(endKey);
+        marks.exit(Tracer.Phase.INDEX_PROBE);
+        result.countCandidates(1);
+        if (startKey == TableStore.NOT_FOUND) {
+            return null;
+        }
+
+        // Another chain may have merged into the walk, so the match is confirmed by replaying the stored chain
+        byte[] key = new byte[DES.KEY_LENGTH];
+        indexToKey(startKey, key);
+        byte[] lookup = lookupChain(des, key, cryptogramBlocks, result);
+        if (lookup == null && !result.isCancelled()) {
+            result.countFalseAlarms(1);
+        }
+        return lookup;
+    }
+
+    // The chain containing the key continues from reduce(cryptogram) to its distinguished point, NOT_FOUND if none within chainLength
+    private long walkToDistinguished(DES des, long[] cryptogramBlocks, LookupResult result) {
+        long[] cryptogram = new long[plaintextBlocks.length];
+        byte[] key = new byte[DES.KEY_LENGTH];
+        long index = reduce(cryptogramBlocks, 0, cryptogramBlocks.length, 0, key);
+
+        Tracer.Marks marks = tracer.marks();
+        int j = 0;
+        for (; j < chainLength && !isDistinguished(index) && !result.isCancelled(); j++) {
+            encrypt(des, key, cryptogram, marks);
+            marks.enter(Tracer.Phase.REDUCE);
+            index = reduce(cryptogram, 0, cryptogram.length, 0, key);
+            marks.exit(Tracer.Phase.REDUCE);
+        }
+
+        result.countDesOperations(j);
+        return isDistinguished(index) ? index : TableStore.NOT_FOUND;
+    }
+
+    /**
+     * Looks up many cryptograms with at most threadCount workers of the scheduler. Cryptograms are taken in batches: end key candidates of the whole
+     * batch are computed in parallel, sorted and merge-joined with the table, then the hits are confirmed in parallel.
+     * Every cryptogram is reported to results as soon as its batch resolves it, with a null key if it was not found.
+     */
+    public void lookupBatch(Iterator<String> cryptogramsToCrack, int threadCount, BiConsumer<String, byte[]> results)
+            throws InterruptedException {
+        int batchSize = getBatchSize();
+
+        while (cryptogramsToCrack.hasNext()) {
+            List<String> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && cryptogramsToCrack.hasNext()) {
+                batch.add(cryptogramsToCrack.next());
+            }
+            lookupBatch(batch, threadCount, results);
+            metrics.batchQueries(batch.size());
+        }
+    }
+
+    // Cryptograms per batch, so that the end key candidates of a batch take about BATCH_CANDIDATES longs
+    int getBatchSize() {
+        return Math.max(1, BATCH_CANDIDATES / (dpDigits > 0 ? 1 : chainLength));
+    }
+
+    // Looks up one batch, every cryptogram of the batch is reported to results exactly once
+    void lookupBatch(List<String> batch, int threadCount, BiConsumer<String, byte[]> results) throws InterruptedException {
+        int candidatesPerCryptogram = dpDigits > 0 ? 1 : chainLength;
+        long[][] cryptogramBlocks = new long[batch.size()][];
+        // (endKey << CANDIDATE_ID_BITS | cryptogram number * candidatesPerCryptogram + position), NOT_FOUND if there is no end key
+        long[] candidates = new long[batch.size() * candidatesPerCryptogram];
+        List<Runnable> tasks = new ArrayList<>();
+        LookupResult result = new LookupResult(); // never cancelled, every cryptogram of the batch is resolved
+
+        for (int i = 0; i < batch.size(); i++) {
+            int cryptogramNumber = i;
+            long[] blocks = cryptogramBlocks[i] = Hex.hexStringToBlocks(batch.get(i));
+            long firstId = (long) i * candidatesPerCryptogram;
+
+            if (dpDigits > 0) {
+                tasks.add(() -> {
+                    long endKey = walkToDistinguished(WORKER_DES.get(), blocks, result);
+                    candidates[cryptogramNumber] = endKey == TableStore.NOT_FOUND ? endKey : (endKey << CANDIDATE_ID_BITS) | firstId;
+                });
+                continue;
+            }
+
+            for (int top = chainLength - 1; top >= 0; top -= BitslicedDES.LANES) {
+                int topPosition = top;
+                tasks.add(() -> {
+                    long[] endKeys = new long[BitslicedDES.LANES];
+                    int nLanes = walkToEnd(WORKER_BITSLICED_DES.get(), blocks, topPosition, endKeys, result);
+                    for (int lane = 0; lane < nLanes; lane++) {
+                        long id = firstId + topPosition - lane;
+                        candidates[(int) id] = (endKeys[lane] << CANDIDATE_ID_BITS) | id;
+                    }
+                });
+            }
+        }
+        runAll(tasks, threadCount);
+
+        // Sorted candidates are joined with the table in one pass (a sorted store reads its pages once, in order)
+        Arrays.sort(candidates);
+        int firstCandidate = 0; // candidates without an end key sort first
+        while (firstCandidate < candidates.length && candidates[firstCandidate] == TableStore.NOT_FOUND) {
+            firstCandidate++;
+        }
+        int nCandidates = candidates.length - firstCandidate;
+        long[] startKeys = new long[nCandidates];
+        for (int i = 0; i < nCandidates; i++) {
+            startKeys[i] = candidates[firstCandidate + i] >>> CANDIDATE_ID_BITS;
+        }
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.INDEX_PROBE);
+        table.getSorted(startKeys, startKeys, nCandidates);
+        marks.exit(Tracer.Phase.INDEX_PROBE);
+        result.countCandidates(nCandidates);
+
+        long[] hits = new long[nCandidates]; // (candidate id << bitsPerKey | startKey)
+        int nHits = 0;
+        int bitsPerKey = getBitsPerKey();
+
+        // Only the candidates whose end key is in the table get their chain regenerated
+        for (int i = 0; i < nCandidates; i++) {
+            if (startKeys[i] != TableStore.NOT_FOUND) {
+                hits[nHits++] = ((candidates[firstCandidate + i] & CANDIDATE_ID_MASK) << bitsPerKey) | startKeys[i];
+            }
+        }
+
+        // Sorted by candidate id, so the hits of every cryptogram are adjacent and ordered by position, shortest replays first
+        Arrays.sort(hits, 0, nHits);
+        boolean[] hasHits = new boolean[batch.size()];
+        tasks.clear();
+
+        for (int from = 0; from < nHits; ) {
+            int cryptogramNumber = (int) ((hits[from] >>> bitsPerKey) / candidatesPerCryptogram);
+            int to = from + 1;
+            while (to < nHits && (hits[to] >>> bitsPerKey) / candidatesPerCryptogram == cryptogramNumber) {
+                to++;
+            }
+
+            int first = from, last = to;
+            from = to;
+            hasHits[cryptogramNumber] = true;
+            tasks.add(() -> {
+                byte[] key = new byte[DES.KEY_LENGTH], lookup = null;
+                int h = first;
+                for (; h < last && lookup == null; h++) {
+                    indexToKey(hits[h] & ((1L << bitsPerKey) - 1), key);
+                    int position = (int) ((hits[h] >>> bitsPerKey) % candidatesPerCryptogram);
+                    lookup = dpDigits > 0
+                            ? lookupChain(WORKER_DES.get(), key, cryptogramBlocks[cryptogramNumber], result)
+                            : lookupChain(WORKER_DES.get(), key, cryptogramBlocks[cryptogramNumber], position, result);
+                }
+                result.countFalseAlarms(h - first - (lookup != null ? 1 : 0));
+                synchronized (results) {
+                    results.accept(batch.get(cryptogramNumber), lookup);
+                }
+            });
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (!hasHits[i]) {
+                synchronized (results) {
+                    results.accept(batch.get(i), null);
+                }
+            }
+        }
+        runAll(tasks, threadCount);
+        metrics.lookupWork(result);
+    }
+
+    private void runAll(List<Runnable> tasks, int threadCount) throws InterruptedException {
+        scheduler.runChunks(tasks.size(), threadCount, task -> tasks.get((int) task).run());
+    }
+
+    private byte[] lookupChain(DES des, byte[] startKey, long[] cryptogramToFind, int position, LookupResult result) {
+        long[] cryptogram = new long[plaintextBlocks.length];
+        byte[] key = startKey.clone(), lookup = null; // reduced in place, the table entry must stay untouched
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.CHAIN_REPLAY);
+
+        int j = 0;
+        for (; j < position && !result.isCancelled(); j++) {
+            encrypt(des, key, cryptogram, marks);
+            marks.enter(Tracer.Phase.REDUCE);
+            reduce(cryptogram, 0, cryptogram.length, j, key);
+            marks.exit(Tracer.Phase.REDUCE);
+        }
+
+        if (j == position) {
+            encrypt(des, key, cryptogram, marks);
+            j++;
+            lookup = Arrays.equals(cryptogram, cryptogramToFind) ? key : null;
+        }
+
+        result.countDesOperations(j);
+        marks.exit(Tracer.Phase.CHAIN_REPLAY);
+        return lookup;
+    }
+
+    // Encrypts the plaintext with key into cryptogram
+    private void encrypt(DES des, byte[] key, long[] cryptogram, Tracer.Marks marks) {
+        marks.enter(Tracer.Phase.DES_INIT);
+        des.initializeEncryptor(key);
+        marks.exit(Tracer.Phase.DES_INIT);
+
+        marks.enter(Tracer.Phase.ENCRYPT);
+        des.encrypt(plaintextBlocks, cryptogram);
+        marks.exit(Tracer.Phase.ENCRYPT);
+    }
+
+    public byte[] lookupExhaustive(String cryptogramToCrack, int threadCount) {
+        long startNanos = System.nanoTime();
+        LookupResult result = new LookupResult();
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.LOOKUP);
+        try {
+            lookupExhaustive(Hex.hexStringToBlocks(cryptogramToCrack), threadCount, result);
+        } finally {
+            marks.exit(Tracer.Phase.LOOKUP);
         }
+        metrics.queryFinished(result, System.nanoTime() - startNanos);
+        return result.get();
+    }
+
+    byte[] lookupExhaustive(long[] cryptogramBlocks, int threadCount, LookupResult result) {
+        // Replays every chain from its start key -- nChains * chainLength encryptions, kept for cross-checking tables
+        LongAdder lookedChains = new LongAdder();
+        long nChunks = (table.slots() + EXHAUSTIVE_CHUNK_SLOTS - 1) / EXHAUSTIVE_CHUNK_SLOTS;
+
+        // Chains are read in place from ranges of store slots, so no per-chain objects or tasks are created
+        ComputeScheduler.ChunkAction replayChunk = chunk -> {
+            byte[] startKey = new byte[DES.KEY_LENGTH];
+            long from = chunk * EXHAUSTIVE_CHUNK_SLOTS;
+            table.forEach(from, Math.min(from + EXHAUSTIVE_CHUNK_SLOTS, table.slots()), (endKey, startKeyIndex) -> {
+                if (result.isCancelled()) {
+                    return;
+                }
+
+                indexToKey(startKeyIndex, startKey);
+                byte[] lookup = lookupChain(WORKER_DES.get(), startKey, cryptogramBlocks, result);
+                if (lookup != null && result.publish(lookup)) {
+                    System.out.println("Wątek " + workerId() + " znalazł klucz. Przerywanie przeszukiwania.");
+                }
 
-        progressExecutor.shutdownNow();
+                lookedChains.increment();
+            });
+        };
 
-        return foundKey[0];
+        System.out.println("Liczba wątków przeszukujących tablicę: " + Math.min(threadCount, scheduler.getParallelism()));
+        runLookup(nChunks, replayChunk, threadCount, result, () -> {
+            double progressPercent = (double) lookedChains.sum() / getTableSize() * 100;
+            System.out.println("Przeszukano: " + String.format("%.2f", progressPercent) + "%");
+        });
+
+        return result.get();
     }
 
-    private byte[] lookupChain(DES des, byte[] startKey, String cryptogramToFind) {
-        String cryptogram;
-        byte[] key = startKey, lookup = null;
+    private byte[] lookupChain(DES des, byte[] startKey, long[] cryptogramToFind, LookupResult result) {
+        long[] cryptogram = new long[plaintextBlocks.length];
+        byte[] key = startKey.clone(), lookup = null; // reduced in place, the table entry must stay untouched
+        int encryptions = 0;
+        Tracer.Marks marks = tracer.marks();
+        marks.enter(Tracer.Phase.CHAIN_REPLAY);
 
-        for (int j = 0; j < chainLength; j++) {
-            des.initializeEncryptor(key);
-            cryptogram = des.encrypt(plaintext);
+        for (int j = 0; j < chainLength && !result.isCancelled(); j++) {
+            encrypt(des, key, cryptogram, marks);
+            encryptions++;
 
-            if (cryptogram.equals(cryptogramToFind)) {
+            if (Arrays.equals(cryptogram, cryptogramToFind)) {
                 lookup = key;
                 break;
             }
 
-            key = reduce(cryptogram, j);
+            marks.enter(Tracer.Phase.REDUCE);
+            long index = reduce(cryptogram, 0, cryptogram.length, reductionPosition(j), key);
+            marks.exit(Tracer.Phase.REDUCE);
+            if (dpDigits > 0 && isDistinguished(index)) {
+                break;
+            }
         }
 
+        result.countDesOperations(encryptions);
+        marks.exit(Tracer.Phase.CHAIN_REPLAY);
         return lookup;
     }
 
-    public int getTableSize() {
-        return table.size();
+    public long getTableSize() {
+        return table == null ? 0 : table.size();
     }
 
     public String getPlaintext() {
@@ -282,12 +1257,265 @@ public class RainbowTable {
         return chainLength;
     }
 
+    public int getDistinguishedPointDigits() {
+        return dpDigits;
+    }
+
+    public int getTableIndex() {
+        return tableIndex;
+    }
+
     public int getPasswordLength() {
-        return passwordLength;
+        return keySpace.getLength();
+    }
+
+    public KeySpace getKeySpace() {
+        return keySpace;
+    }
+
+    public void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    public void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    public void setScheduler(ComputeScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void setPerfect(boolean perfect) {
+        this.perfect = perfect;
+    }
+
+    /**
+     * Generates only the shard-th of nShards contiguous ranges of the start keys, so that separate processes can build
+     * the table in parts. Every shard is a table on its own; together (e.g. as a RainbowTableSet) they hold every chain
+     * of the whole table, end keys colliding across shards are simply kept in both.
+     */
+    public void setShard(int shard, int nShards) {
+        if (nShards < 1 || shard < 0 || shard >= nShards) {
+            throw new IllegalArgumentException("Numer fragmentu musi być pomiędzy 0 a " + (nShards - 1));
+        }
+        this.shard = shard;
+        this.nShards = nShards;
+    }
+
+    // Chains generated by the last generate call, including the ones dropped because of end key collisions
+    public long getGeneratedChains() {
+        return generatedChains == null ? 0 : generatedChains.sum();
+    }
+
+    public long getMergedChains() {
+        return getGeneratedChains() - abandonedChains - (table.size() - baseChains);
     }
 
-    protected Map<ByteArrayWrapper, ByteArrayWrapper> getTable() {
+    /**
+     * First start key after the ones used for the chains of the table, where extend continues. Files written before
+     * it was recorded give one more than the highest stored start key: the start keys after it were either not used
+     * or lost their chains (to an end key collision or for want of a distinguished point), which they would lose again.
+     */
+    public long getNextStartKey() {
+        if (nextStartKey < 0) {
+            long[] highest = {-1};
+            table.forEach((endKey, startKey) -> highest[0] = Math.max(highest[0], startKey));
+            nextStartKey = highest[0] + 1;
+        }
+        return nextStartKey;
+    }
+
+    /**
+     * Checksum of the stored (end key, start key) records which does not depend on the order the store visits them in,
+     * so that tables with the same parameters but different chains (other shards, extensions, perfect mode) differ.
+     */
+    public long getContentChecksum() {
+        long[] checksum = {0};
+        table.forEach((endKey, startKey) -> {
+            long h = (endKey * 0x9E3779B97F4A7C15L) ^ startKey;
+            h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+            h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+            checksum[0] += h ^ (h >>> 31);
+        });
+        return checksum[0];
+    }
+
+    // Chains which did not reach a distinguished point within chainLength
+    public long getAbandonedChains() {
+        return abandonedChains;
+    }
+
+    /**
+     * Estimated fraction of the key space covered by the table. The number of distinct keys in column i + 1 is
+     * m(i + 1) = N * (1 - e^(-m(i) / N)), a key is covered unless it misses every column. The chain lengths of
+     * distinguished point tables are only known for a generated table, a table read from a file is taken to have
+     * chains of the full chainLength, which makes its estimate an upper bound.
+     */
+    public double estimateCoverage() {
+        if (dpDigits > 0) {
+            // Chains sharing a key share the distinguished point too, so the stored chains are disjoint
+            double meanLength = generatedLinks != null && getGeneratedChains() > 0
+                    ? (double) generatedLinks.sum() / getGeneratedChains() : chainLength;
+            return Math.min(1.0, getTableSize() * meanLength / modulus);
+        }
+
+        double n = modulus;
+        double m = getTableSize();
+        double missed = 1.0;
+
+        for (int i = 0; i < chainLength; i++) {
+            missed *= 1.0 - m / n;
+            m = -n * Math.expm1(-m / n);
+        }
+
+        return 1.0 - missed;
+    }
+
+    /**
+     * Makes generate save its progress in directory after every segment of chains. With resume, generation continues
+     * from the progress saved there by an interrupted run with the same parameters.
+     */
+    public void setCheckpoint(File directory, boolean resume) {
+        this.checkpointDirectory = directory;
+        this.resume = resume;
+    }
+
+    /**
+     * Makes generate build the table by external sort in directory: chains are collected in sorted runs of at most
+     * memoryBytes and merged into a file, which is then mapped. Memory use no longer grows with the table size.
+     */
+    public void setExternalSort(File directory, long memoryBytes) {
+        this.externalSortDirectory = directory;
+        this.externalSortMemory = memoryBytes;
+    }
+
+    // Removes the saved progress and the external sort files, once the generated table has been written
+    public void deleteWorkFiles() {
+        if (externalSortBuilder != null) {
+            externalSortBuilder.delete();
+            externalSortBuilder = null;
+        }
+        if (checkpoint != null) {
+            checkpoint.delete();
+            checkpoint = null;
+        }
+    }
+
+    /**
+     * Merges compatible tables (same key space, plaintext, chain length, distinguished points and table index, so the
+     * same reduction functions) into one table sorted by end key, keeping the chain with the lowest start key for every
+     * end key. Sorted tables (read from binary files) are streamed as runs of an external sort in directory, the chains
+     * of the others are sorted there using at most memoryBytes; deleteWorkFiles removes the files once it is saved.
+     */
+    public static RainbowTable merge(List<RainbowTable> tables, File directory, long memoryBytes) throws IOException {
+        RainbowTable first = tables.get(0);
+        for (RainbowTable table : tables) {
+            if (!table.keySpace.equals(first.keySpace) || !table.plaintext.equals(first.plaintext) || table.chainLength != first.chainLength
+                    || table.dpDigits != first.dpDigits || table.tableIndex != first.tableIndex) {
+                throw new IllegalArgumentException("Scalane tablice muszą mieć tę samą przestrzeń kluczy, tekst jawny, długość łańcucha, "
+                        + "punkty wyróżnione i indeks tablicy");
+            }
+        }
+
+        RainbowTable merged = new RainbowTable(first.keySpace, first.chainLength, first.plaintext, first.dpDigits, first.tableIndex);
+        merged.externalSortBuilder = new ExternalSortBuilder(directory, memoryBytes, merged.getBitsPerKey());
+        merged.nextStartKey = 0;
+        for (RainbowTable table : tables) {
+            merged.externalSortBuilder.addAll(table.table);
+            merged.nextStartKey = Math.max(merged.nextStartKey, table.getNextStartKey());
+        }
+        merged.table = merged.externalSortBuilder.build();
+        return merged;
+    }
+
+    // Copies the chains into a hash table store, e.g. to replace binary search in a mapped file with single probes
+    public void loadIntoHashTable() {
+        TableStore hashTable = new HashTableStore(table.size(), getBitsPerKey(), offHeap);
+        table.forEach(hashTable::put);
+        table = hashTable;
+    }
+
+    protected TableStore getTable() {
         return table;
     }
 
+    /**
+     * Outcome of a parallel lookup shared by its workers. The first confirmed key is published once, after that
+     * (or after cancel) workers stop at their next poll of isCancelled, which they do inside their chain loops.
+     */
+    static final class LookupResult {
+        private final AtomicReference<byte[]> key = new AtomicReference<>();
+        private volatile boolean cancelled;
+        private volatile boolean abandoned; // stopped before all of the work was done, e.g. by a timeout
+        // Work of the lookup for Metrics, every walk adds its totals once when it ends
+        private final LongAdder desOperations = new LongAdder();
+        private final LongAdder candidatesProbed = new LongAdder();
+        private final LongAdder falseAlarms = new LongAdder();
+
+        // Returns true for the first key only
+        boolean publish(byte[] foundKey) {
+            if (key.compareAndSet(null, foundKey)) {
+                cancelled = true;
+                return true;
+            }
+            return false;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        void abandon() {
+            abandoned = true;
+            cancelled = true;
+        }
+
+        // True if the key was found or if every chain was checked, so that a missing key is really not in the tables
+        boolean isConclusive() {
+            return key.get() != null || !abandoned;
+        }
+
+        byte[] get() {
+            return key.get();
+        }
+
+        void countDesOperations(long count) {
+            desOperations.add(count);
+        }
+
+        void countCandidates(long count) {
+            candidatesProbed.add(count);
+        }
+
+        void countFalseAlarms(long count) {
+            falseAlarms.add(count);
+        }
+
+        // Adds the work of another lookup of the same query, e.g. of the next table
+        void countWork(LookupResult other) {
+            desOperations.add(other.getDesOperations());
+            candidatesProbed.add(other.getCandidatesProbed());
+            falseAlarms.add(other.getFalseAlarms());
+        }
+
+        long getDesOperations() {
+            return desOperations.sum();
+        }
+
+        long getCandidatesProbed() {
+            return candidatesProbed.sum();
+        }
+
+        long getFalseAlarms() {
+            return falseAlarms.sum();
+        }
+    }
 }
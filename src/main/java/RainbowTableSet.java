@@ -0,0 +1,354 @@
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * Tables for the same plaintext, built with different table indices (so with different reduction functions).
+ * A key missed by one table may be covered by another, so the success probability grows with the number of tables
+ * instead of with the chain length. Lookups run the tables on one scheduler and stop at the first confirmed key.
+ * With a result cache set, every lookup checks it first and caches its result once all chains have been checked.
+ */
+public class RainbowTableSet {
+    private final List<RainbowTable> tables;
+    private String tablesId; // identity of the tables, under which their negative results are cached; set with the result cache
+    private ComputeScheduler scheduler = ComputeScheduler.shared();
+    private ResultCache resultCache;
+    private final Metrics metrics = Metrics.shared();
+
+    public RainbowTableSet(List<RainbowTable> tables) {
+        if (tables.isEmpty()) {
+            throw new IllegalArgumentException("Zestaw musi zawierać co najmniej jedną tablicę");
+        }
+
+        RainbowTable first = tables.get(0);
+        for (RainbowTable table : tables) {
+            if (!table.getPlaintext().equals(first.getPlaintext()) || !table.getKeySpace().equals(first.getKeySpace())) {
+                throw new IllegalArgumentException("Tablice zestawu muszą być wygenerowane dla tego samego tekstu jawnego i przestrzeni kluczy");
+            }
+        }
+
+        this.tables = new ArrayList<>(tables);
+    }
+
+    // Parameters alone do not tell apart tables of other start keys (shards, extensions), so the chains are checksummed
+    // too; the order of the tables does not matter
+    private static String identify(List<RainbowTable> tables) {
+        List<String> identities = new ArrayList<>();
+        for (RainbowTable table : tables) {
+            identities.add(table.getKeySpace() + "/" + table.getPlaintext() + "/" + table.getChainLength() + "/"
+                    + table.getDistinguishedPointDigits() + "/" + table.getTableIndex() + "/" + table.getTableSize() + "/"
+                    + table.getNextStartKey() + "/" + Long.toHexString(table.getContentChecksum()));
+        }
+        Collections.sort(identities);
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Hex.toHex(digest.digest(String.join("\n", identities).getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JDK has SHA-256
+        }
+    }
+
+    /**
+     * Table files given by pathnames, a directory stands for all files in it (in name order, subdirectories such as
+     * the work directories of unfinished generations are skipped).
+     */
+    public static List<String> listTableFiles(String... pathnames) {
+        List<String> files = new ArrayList<>();
+
+        for (String pathname : pathnames) {
+            File file = new File(pathname);
+            File[] children = file.listFiles(File::isFile);
+            if (children == null) {
+                files.add(pathname);
+                continue;
+            }
+
+            Arrays.sort(children);
+            for (File child : children) {
+                files.add(child.getPath());
+            }
+        }
+
+        return files;
+    }
+
+    public List<RainbowTable> getTables() {
+        return Collections.unmodifiableList(tables);
+    }
+
+    // Makes all tables of the set run their work on the scheduler
+    public void setScheduler(ComputeScheduler scheduler) {
+        this.scheduler = scheduler;
+        for (RainbowTable table : tables) {
+            table.setScheduler(scheduler);
+        }
+    }
+
+    // The identity of the tables reads all of their chains, so it is only computed for a set which caches its results
+    public void setResultCache(ResultCache resultCache) {
+        if (resultCache != null && tablesId == null) {
+            tablesId = identify(tables);
+        }
+        this.resultCache = resultCache;
+    }
+
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Result of a rainbow lookup of the cryptogram taken from the result cache, without any chain work: the key,
+     * ResultCache.NOT_FOUND if the tables are known not to crack it, null if it is not cached (or there is no cache).
+     */
+    byte[] cachedResult(String cryptogram) {
+        return cachedResult(cryptogram, false);
+    }
+
+    // Exhaustive lookups find keys which rainbow lookups can miss, so their negative results are kept apart
+    private byte[] cachedResult(String cryptogram, boolean exhaustive) {
+        return resultCache != null ? resultCache.get(getPlaintext(), cacheScope(exhaustive), cryptogram) : null;
+    }
+
+    private void cacheResult(String cryptogram, boolean exhaustive, RainbowTable.LookupResult result) {
+        cacheResult(cryptogram, exhaustive, result.get(), result.isConclusive());
+    }
+
+    private void cacheResult(String cryptogram, boolean exhaustive, byte[] key, boolean conclusive) {
+        if (resultCache != null && conclusive) {
+            resultCache.put(getPlaintext(), cacheScope(exhaustive), cryptogram, key);
+        }
+    }
+
+    private String cacheScope(boolean exhaustive) {
+        return exhaustive ? "exhaustive/" + tablesId : tablesId;
+    }
+
+    private String getPlaintext() {
+        return tables.get(0).getPlaintext();
+    }
+
+    private static byte[] foundKey(byte[] cached) {
+        return cached == ResultCache.NOT_FOUND ? null : cached;
+    }
+
+    /**
+     * Looks the cryptogram up with at most threadCount workers of the scheduler and without any output, for callers
+     * which run many queries at once (e.g. LookupServer). Returns null if the key is not found within RainbowTable.LOOKUP_TIMEOUT_SECS.
+     */
+    public byte[] query(String cryptogramToCrack, int threadCount) throws InterruptedException {
+        byte[] cached = cachedResult(cryptogramToCrack, false);
+        return cached != null ? foundKey(cached) : queryTables(cryptogramToCrack, threadCount);
+    }
+
+    // query for callers which have checked the result cache already
+    byte[] queryTables(String cryptogramToCrack, int threadCount) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        RainbowTable.LookupResult result = new RainbowTable.LookupResult();
+        List<Runnable> tasks = interleavedLookupTasks(Hex.hexStringToBlocks(cryptogramToCrack), result);
+
+        try {
+            scheduler.runChunks(tasks.size(), threadCount, result::isCancelled, task -> tasks.get((int) task).run(),
+                    RainbowTable.LOOKUP_TIMEOUT_SECS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            result.abandon(); // reported as not found, like a lookup which has run out of time
+        } catch (InterruptedException e) {
+            result.abandon();
+            throw e;
+        } finally {
+            result.cancel(); // after a timeout or an interrupt the running tasks stop at their next poll
+            metrics.queryFinished(result, System.nanoTime() - startNanos);
+        }
+
+        cacheResult(cryptogramToCrack, false, result);
+        return result.get();
+    }
+
+    public byte[] lookup(String cryptogramToCrack, int threadCount) {
+        byte[] cached = cachedResult(cryptogramToCrack, false);
+        if (cached != null) {
+            System.out.println("Wynik z pamięci podręcznej wyników");
+            return foundKey(cached);
+        }
+
+        long startNanos = System.nanoTime();
+        RainbowTable.LookupResult result = new RainbowTable.LookupResult();
+        if (tables.size() == 1) {
+            tables.get(0).lookup(Hex.hexStringToBlocks(cryptogramToCrack), threadCount, result);
+            metrics.queryFinished(result, System.nanoTime() - startNanos);
+            cacheResult(cryptogramToCrack, false, result);
+            return result.get();
+        }
+
+        long timeMillis = System.currentTimeMillis();
+        List<Runnable> tasks = interleavedLookupTasks(Hex.hexStringToBlocks(cryptogramToCrack), result);
+
+        System.out.println("Liczba wątków przeszukujących " + tables.size() + " tablic: " + Math.min(threadCount, scheduler.getParallelism()));
+
+        try {
+            scheduler.runChunks(tasks.size(), threadCount, result::isCancelled, task -> tasks.get((int) task).run(),
+                    RainbowTable.LOOKUP_TIMEOUT_SECS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            System.out.println("Przekroczono maksymalny czas przeszukiwania: " + RainbowTable.LOOKUP_TIMEOUT_SECS + "s");
+            result.abandon();
+        } catch (InterruptedException e) {
+            System.err.println("Przerwano przeszukiwanie tablic");
+            result.abandon();
+        } finally {
+            result.cancel();
+        }
+        metrics.queryFinished(result, System.nanoTime() - startNanos);
+
+        timeMillis = System.currentTimeMillis() - timeMillis;
+        System.out.println("Przeszukiwanie " + tables.size() + " tablic zakończone w " + timeMillis / 1000.0 + "s");
+        cacheResult(cryptogramToCrack, false, result);
+        return result.get();
+    }
+
+    // Tasks of the tables are interleaved, so that the cheap walks of every table are done before the expensive ones
+    private List<Runnable> interleavedLookupTasks(long[] cryptogramBlocks, RainbowTable.LookupResult result) {
+        List<Iterator<Runnable>> tableTasks = new ArrayList<>();
+        for (RainbowTable table : tables) {
+            tableTasks.add(table.lookupTasks(cryptogramBlocks, result).iterator());
+        }
+
+        List<Runnable> tasks = new ArrayList<>();
+        for (boolean added = true; added; ) {
+            added = false;
+            for (Iterator<Runnable> iterator : tableTasks) {
+                if (iterator.hasNext()) {
+                    tasks.add(iterator.next());
+                    added = true;
+                }
+            }
+        }
+        return tasks;
+    }
+
+    // Tables are replayed one after another, every one of them stops at the first matching chain
+    public byte[] lookupExhaustive(String cryptogramToCrack, int threadCount) {
+        byte[] cached = cachedResult(cryptogramToCrack, true);
+        if (cached != null) {
+            System.out.println("Wynik z pamięci podręcznej wyników");
+            return foundKey(cached);
+        }
+
+        long startNanos = System.nanoTime();
+        RainbowTable.LookupResult work = new RainbowTable.LookupResult(); // of all tables, for the metrics
+        byte[] foundKey = null;
+        boolean conclusive = true; // a table abandoned on a timeout leaves a missing key unconfirmed
+        for (RainbowTable table : tables) {
+            RainbowTable.LookupResult result = new RainbowTable.LookupResult();
+            foundKey = table.lookupExhaustive(Hex.hexStringToBlocks(cryptogramToCrack), threadCount, result);
+            conclusive &= result.isConclusive();
+            work.countWork(result);
+            if (foundKey != null) {
+                break;
+            }
+        }
+        metrics.queryFinished(work, System.nanoTime() - startNanos);
+
+        cacheResult(cryptogramToCrack, true, foundKey, conclusive || foundKey != null);
+        return foundKey;
+    }
+
+    /**
+     * Batch lookup across the tables. The cryptograms of every batch which the result cache does not resolve are looked
+     * up in all tables at once, each table walk being a task of the scheduler. A cryptogram is reported to results as
+     * soon as a table cracks it, or once every table has missed it; each one is reported once.
+     */
+    public void lookupBatch(Iterator<String> cryptogramsToCrack, int threadCount, BiConsumer<String, byte[]> results)
+            throws InterruptedException {
+        long timeMillis = System.currentTimeMillis();
+        int batchSize = Integer.MAX_VALUE;
+        int[] count = {0, 0};
+        BiConsumer<String, byte[]> counted = (cryptogram, key) -> {
+            count[0]++;
+            if (key != null) {
+                count[1]++;
+            }
+            results.accept(cryptogram, key);
+        };
+
+        if (tables.size() == 1 && resultCache == null) {
+            tables.get(0).lookupBatch(cryptogramsToCrack, threadCount, counted);
+            printBatchSummary(timeMillis, count);
+            return;
+        }
+
+        for (RainbowTable table : tables) {
+            batchSize = Math.min(batchSize, table.getBatchSize());
+        }
+
+        while (cryptogramsToCrack.hasNext()) {
+            List<String> uncached = new ArrayList<>(batchSize);
+            while (uncached.size() < batchSize && cryptogramsToCrack.hasNext()) {
+                String cryptogram = cryptogramsToCrack.next();
+                byte[] cached = cachedResult(cryptogram, false);
+                if (cached != null) {
+                    counted.accept(cryptogram, foundKey(cached));
+                } else {
+                    uncached.add(cryptogram);
+                }
+            }
+            if (!uncached.isEmpty()) {
+                lookupInAllTables(uncached, threadCount, counted);
+                metrics.batchQueries(uncached.size());
+            }
+        }
+
+        printBatchSummary(timeMillis, count);
+    }
+
+    // Looks the batch up in every table at the same time, results is called by one thread at a time
+    private void lookupInAllTables(List<String> batch, int threadCount, BiConsumer<String, byte[]> results) throws InterruptedException {
+        Map<String, Integer> occurrences = new HashMap<>(); // a repeated cryptogram is looked up once and reported every time
+        for (String cryptogram : batch) {
+            occurrences.merge(cryptogram, 1, Integer::sum);
+        }
+        List<String> distinct = new ArrayList<>(occurrences.keySet());
+        Map<String, Integer> misses = new HashMap<>(); // tables which have missed the cryptogram, -1 once it is reported
+        boolean[] interrupted = {false};
+
+        scheduler.runChunks(tables.size(), tables.size(), table -> {
+            try {
+                tables.get((int) table).lookupBatch(distinct, threadCount, (cryptogram, key) -> {
+                    synchronized (misses) {
+                        int missed = misses.getOrDefault(cryptogram, 0);
+                        if (missed < 0 || (key == null && missed + 1 < tables.size())) {
+                            misses.put(cryptogram, missed < 0 ? missed : missed + 1);
+                            return;
+                        }
+                        misses.put(cryptogram, -1);
+                        cacheResult(cryptogram, false, key, true); // a batch checks all chains of every table
+                        for (int i = occurrences.get(cryptogram); i > 0; i--) {
+                            results.accept(cryptogram, key);
+                        }
+                    }
+                });
+            } catch (InterruptedException e) {
+                synchronized (misses) {
+                    interrupted[0] = true;
+                }
+            }
+        });
+
+        synchronized (misses) {
+            if (interrupted[0]) {
+                throw new InterruptedException("Przerwano przeszukiwanie wsadowe");
+            }
+        }
+    }
+
+    // count holds the number of cryptograms and of the found keys
+    private void printBatchSummary(long startTimeMillis, int[] count) {
+        double seconds = (System.currentTimeMillis() - startTimeMillis) / 1000.0;
+        System.out.println("Przeszukiwanie wsadowe " + (tables.size() > 1 ? tables.size() + " tablic " : "") + "zakończone w " + seconds
+                + "s, znaleziono klucze dla " + count[1] + " z " + count[0] + " kryptogramów");
+    }
+}
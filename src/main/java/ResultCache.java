@@ -0,0 +1,158 @@
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of lookup results, so that a cryptogram seen again costs a map access instead of the chain work.
+ * A found key is valid for every table of the plaintext, a missing key only for the tables which were searched,
+ * so negative results are kept under the identity of the table set (see RainbowTableSet). The least recently
+ * used results are evicted beyond maxEntries. The cache can be saved to and loaded from a snapshot file.
+ */
+public class ResultCache {
+    public final static byte[] NOT_FOUND = new byte[0]; // cached result of a cryptogram which the tables do not crack
+
+    private final static byte[] FILE_MAGIC = {'R', 'T', 'R', 'C'};
+    private final static int FILE_VERSION = 1;
+    private final static char SCOPE_SEPARATOR = '\0'; // never part of a cryptogram
+
+    private final int maxEntries;
+    private final LinkedHashMap<String, byte[]> entries; // scope + SCOPE_SEPARATOR + cryptogram -> key or NOT_FOUND
+    private long hits;
+    private long misses;
+    private boolean modified; // since the last snapshot
+
+    public ResultCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                return size() > ResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the key of the cryptogram encrypting plaintext, NOT_FOUND if the tables identified by tablesId do not
+     * crack it, or null if its result is not cached.
+     */
+    public synchronized byte[] get(String plaintext, String tablesId, String cryptogram) {
+        cryptogram = cryptogram.toLowerCase();
+
+        byte[] result = entries.get(positiveEntry(plaintext, cryptogram));
+        if (result == null) {
+            result = entries.get(negativeEntry(tablesId, cryptogram));
+        }
+
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    // Caches the result of a lookup which has checked all of its chains, a null key if it has not found one
+    public synchronized void put(String plaintext, String tablesId, String cryptogram, byte[] key) {
+        cryptogram = cryptogram.toLowerCase();
+
+        if (key != null) {
+            entries.remove(negativeEntry(tablesId, cryptogram));
+            entries.put(positiveEntry(plaintext, cryptogram), key.clone());
+        } else {
+            entries.put(negativeEntry(tablesId, cryptogram), NOT_FOUND);
+        }
+        modified = true;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "wpisy: " + entries.size() + "/" + maxEntries + ", trafienia: " + hits + ", chybienia: " + misses;
+    }
+
+    // Loads a snapshot written by save, an empty cache if the file does not exist yet
+    public static ResultCache load(File file, int maxEntries) throws IOException {
+        ResultCache cache = new ResultCache(maxEntries);
+        if (!file.exists()) {
+            return cache;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            byte[] magic = new byte[FILE_MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, FILE_MAGIC)) {
+                throw new IOException("Plik nie jest zapisem pamięci podręcznej wyników");
+            }
+            int version = in.readInt();
+            if (version != FILE_VERSION) {
+                throw new IOException("Nieobsługiwana wersja zapisu pamięci podręcznej wyników: " + version);
+            }
+
+            // Entries are saved from the least recently used, so the order of use survives the reload
+            for (int n = in.readInt(); n > 0; n--) {
+                String entry = in.readUTF();
+                int keyLength = in.readUnsignedByte();
+                byte[] key = keyLength > 0 ? new byte[keyLength] : NOT_FOUND;
+                in.readFully(key);
+                cache.entries.put(entry, key);
+            }
+        }
+
+        return cache;
+    }
+
+    // Writes the snapshot atomically, so that a crash never leaves it half-written; nothing is done if nothing changed
+    public void save(File file) throws IOException {
+        Map<String, byte[]> snapshot;
+        synchronized (this) {
+            if (!modified && file.exists()) {
+                return;
+            }
+            snapshot = new LinkedHashMap<>(entries);
+            modified = false;
+        }
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.write(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, byte[]> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeByte(entry.getValue().length);
+                out.write(entry.getValue());
+            }
+            out.flush();
+            stream.getFD().sync();
+        } catch (IOException e) {
+            synchronized (this) {
+                modified = true;
+            }
+            throw e;
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String positiveEntry(String plaintext, String cryptogram) {
+        return "+" + plaintext + SCOPE_SEPARATOR + cryptogram;
+    }
+
+    private static String negativeEntry(String tablesId, String cryptogram) {
+        return "-" + tablesId + SCOPE_SEPARATOR + cryptogram;
+    }
+}
@@ -0,0 +1,150 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Tracer which samples the phases of the working threads instead of timing them. A phase boundary costs a few
+ * stores into the thread's own stack and a release store of its innermost phase (a plain store on x86, but one
+ * the JIT may not drop); a daemon thread reads the innermost phase of every thread every intervalMillis and counts it,
+ * so the share of samples of a phase estimates the share of time spent in it at sub-percent overhead.
+ * Every phase is passed on to the delegate, e.g. to keep the timing output of the command line tool.
+ */
+public class SamplingProfiler implements Tracer {
+    private final static int MAX_DEPTH = 16;
+
+    private final Tracer delegate;
+    private final long intervalMillis;
+    private final List<ThreadMarks> threads = new CopyOnWriteArrayList<>(); // every thread which has entered a phase
+    private final ThreadLocal<ThreadMarks> marks = ThreadLocal.withInitial(this::register);
+    private final long[] samples = new long[Phase.values().length]; // written by the sampler thread only
+    private long totalSamples;
+    private Thread sampler;
+
+    public SamplingProfiler(Tracer delegate, long intervalMillis) {
+        this.delegate = delegate;
+        this.intervalMillis = intervalMillis;
+    }
+
+    private final static VarHandle CURRENT;
+
+    static {
+        try {
+            CURRENT = MethodHandles.lookup().findVarHandle(ThreadMarks.class, "current", Phase.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final class ThreadMarks implements Marks {
+        private final WeakReference<Thread> thread = new WeakReference<>(Thread.currentThread());
+        private final Marks delegateMarks = delegate.marks();
+        private final Phase[] stack = new Phase[MAX_DEPTH]; // used by the owning thread only
+        private int depth;
+        Phase current; // innermost phase, null outside of all phases; accessed through CURRENT (not private, see findVarHandle)
+
+        @Override
+        public void enter(Phase phase) {
+            if (depth < MAX_DEPTH) {
+                stack[depth] = phase;
+            }
+            depth++;
+            CURRENT.setRelease(this, phase);
+            delegateMarks.enter(phase);
+        }
+
+        @Override
+        public void exit(Phase phase) {
+            depth--;
+            CURRENT.setRelease(this, depth > 0 ? stack[Math.min(depth, MAX_DEPTH) - 1] : null);
+            delegateMarks.exit(phase);
+        }
+
+        Phase current() {
+            return (Phase) CURRENT.getAcquire(this);
+        }
+
+        boolean isAlive() {
+            Thread owner = thread.get();
+            return owner != null && owner.isAlive();
+        }
+    }
+
+    private ThreadMarks register() {
+        ThreadMarks threadMarks = new ThreadMarks();
+        threads.add(threadMarks);
+        return threadMarks;
+    }
+
+    @Override
+    public Marks marks() {
+        return marks.get();
+    }
+
+    public synchronized void start() {
+        if (sampler != null) {
+            return;
+        }
+
+        sampler = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(intervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                sample();
+            }
+        }, "profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    public void stop() throws InterruptedException {
+        Thread sampler;
+        synchronized (this) {
+            sampler = this.sampler;
+            this.sampler = null;
+        }
+        if (sampler != null) {
+            sampler.interrupt();
+            sampler.join();
+        }
+    }
+
+    private synchronized void sample() {
+        List<ThreadMarks> finished = new ArrayList<>();
+        for (ThreadMarks threadMarks : threads) {
+            Phase phase = threadMarks.current();
+            if (phase != null) {
+                samples[phase.ordinal()]++;
+                totalSamples++;
+            } else if (!threadMarks.isAlive()) {
+                finished.add(threadMarks); // e.g. the virtual thread of a finished query
+            }
+        }
+        threads.removeAll(finished);
+    }
+
+    /**
+     * Share of the samples of every phase seen, in the order of Phase, e.g. "ENCRYPT 61.20%, REDUCE 20.05%, ...".
+     * A phase which encloses others (e.g. LOOKUP) gets only the samples taken outside of its inner phases, which for
+     * operation phases includes the time their thread waits for the scheduler workers.
+     */
+    public synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        for (Phase phase : Phase.values()) {
+            if (samples[phase.ordinal()] > 0) {
+                report.append(report.length() > 0 ? ", " : "").append(phase).append(' ')
+                        .append(String.format("%.2f", (double) samples[phase.ordinal()] / totalSamples * 100)).append('%');
+            }
+        }
+        return "próbki: " + totalSamples + (report.length() > 0 ? ", " + report : "");
+    }
+
+    public synchronized long getTotalSamples() {
+        return totalSamples;
+    }
+}
@@ -0,0 +1,306 @@
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs table work in worker processes of this program on the local host, so that neither the cores nor the memory
+ * of one JVM limit it. A build runs one generate worker per shard (RainbowTable.setShard), each writing its own
+ * sorted shard file. A lookup starts serve workers (see LookupServer), each keeping a part of the shard files loaded
+ * on a loopback port, fans every cryptogram out to all of them and merges the answers: the key of any worker which
+ * cracks it, otherwise not found. Output of the workers is passed on with a [fragment i] prefix.
+ */
+public class ShardCoordinator implements Closeable {
+    private final static long STARTUP_TIMEOUT_MILLIS = 600000; // a worker loads its tables before it listens
+    private final static long STARTUP_POLL_MILLIS = 100;
+    private final static long STOP_TIMEOUT_MILLIS = 10000;
+    private final static int BATCH_CRYPTOGRAMS = 10000; // cryptograms sent to the workers in one request
+
+    private final List<Process> workers;
+    private final List<Integer> ports;
+    private final ExecutorService requests; // one request per worker at a time, the workers do the chain work
+
+    private ShardCoordinator(List<Process> workers, List<Integer> ports) {
+        this.workers = workers;
+        this.ports = ports;
+        this.requests = Executors.newFixedThreadPool(workers.size(), runnable -> {
+            Thread thread = new Thread(runnable, "shard-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Name of the file of the shard in the directory of a sharded table
+    public static String shardFileName(int shard, int nShards) {
+        return "shard-" + shard + "-of-" + nShards;
+    }
+
+    /**
+     * Runs a worker with each of the argument lists (arguments of Main) and waits for all of them.
+     * Returns true if all of them have succeeded; if one fails or the wait is interrupted, the others are stopped.
+     */
+    public static boolean runWorkers(List<List<String>> workerArgs) throws IOException, InterruptedException {
+        List<Process> workers = new ArrayList<>();
+        boolean succeeded = false;
+
+        try {
+            for (int i = 0; i < workerArgs.size(); i++) {
+                workers.add(startWorker(i, workerArgs.get(i)));
+            }
+
+            // Polled, so that a failed worker stops the build without waiting for the others
+            while (true) {
+                boolean running = false;
+                for (int i = 0; i < workers.size(); i++) {
+                    Process worker = workers.get(i);
+                    if (worker.isAlive()) {
+                        running = true;
+                    } else if (worker.exitValue() != 0) {
+                        System.err.println("Fragment " + i + " zakończył się błędem (kod " + worker.exitValue() + ")");
+                        return false;
+                    }
+                }
+                if (!running) {
+                    succeeded = true;
+                    return true;
+                }
+                Thread.sleep(STARTUP_POLL_MILLIS);
+            }
+        } finally {
+            if (!succeeded) {
+                stopWorkers(workers);
+            }
+        }
+    }
+
+    /**
+     * Starts a serve worker with each of the argument lists (arguments of Main without the port, which is chosen here)
+     * and returns once all of them listen.
+     */
+    public static ShardCoordinator startLookupWorkers(List<List<String>> workerArgs) throws IOException, InterruptedException {
+        List<Process> workers = new ArrayList<>();
+        List<Integer> ports = new ArrayList<>();
+        boolean started = false;
+
+        try {
+            for (int i = 0; i < workerArgs.size(); i++) {
+                int port = freePort();
+                List<String> args = new ArrayList<>(workerArgs.get(i));
+                args.add("--port");
+                args.add(Integer.toString(port));
+                workers.add(startWorker(i, args));
+                ports.add(port);
+            }
+            for (int i = 0; i < workers.size(); i++) {
+                awaitListening(i, workers.get(i), ports.get(i));
+            }
+            started = true;
+            return new ShardCoordinator(workers, ports);
+        } finally {
+            if (!started) {
+                stopWorkers(workers);
+            }
+        }
+    }
+
+    public int getWorkerCount() {
+        return workers.size();
+    }
+
+    // Key of the cryptogram found by any of the workers, null if none of them cracks it
+    public byte[] query(String cryptogram) throws IOException, InterruptedException {
+        List<Future<Map<String, byte[]>>> answers = new ArrayList<>();
+        for (int port : ports) {
+            answers.add(requests.submit(() -> request(port, "GET", "c=" + cryptogram, null)));
+        }
+        return merge(answers).get(cryptogram.toLowerCase());
+    }
+
+    /**
+     * Looks up the cryptograms in batches, every batch is sent to all of the workers at once.
+     * Every cryptogram is reported to results once, with a null key if no worker cracks it.
+     */
+    public void lookupBatch(Iterator<String> cryptograms, BiConsumer<String, byte[]> results) throws IOException, InterruptedException {
+        while (cryptograms.hasNext()) {
+            List<String> batch = new ArrayList<>();
+            while (batch.size() < BATCH_CRYPTOGRAMS && cryptograms.hasNext()) {
+                batch.add(cryptograms.next());
+            }
+
+            String body = String.join("\n", batch) + "\n";
+            List<Future<Map<String, byte[]>>> answers = new ArrayList<>();
+            for (int port : ports) {
+                answers.add(requests.submit(() -> request(port, "POST", null, body)));
+            }
+
+            Map<String, byte[]> found = merge(answers);
+            for (String cryptogram : batch) {
+                results.accept(cryptogram, found.get(cryptogram.toLowerCase()));
+            }
+        }
+    }
+
+    // Keys found by the workers, by cryptogram in lower case
+    private static Map<String, byte[]> merge(List<Future<Map<String, byte[]>>> answers) throws IOException, InterruptedException {
+        Map<String, byte[]> found = new HashMap<>();
+
+        for (Future<Map<String, byte[]>> answer : answers) {
+            try {
+                answer.get().forEach(found::putIfAbsent);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+        return found;
+    }
+
+    // Sends the request to the worker and returns the keys found in its answer lines
+    private static Map<String, byte[]> request(int port, String method, String query, String body) throws IOException {
+        URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), port, "/lookup" + (query != null ? "?" + query : ""));
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "text/plain; charset=utf-8");
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        if (connection.getResponseCode() != 200) {
+            throw new IOException("fragment na porcie " + port + " odpowiedział kodem " + connection.getResponseCode());
+        }
+
+        Map<String, byte[]> found = new HashMap<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.contains("\"error\":")) {
+                    throw new IOException("fragment na porcie " + port + ": " + line);
+                }
+                String cryptogram = jsonField(line, "cryptogram");
+                String key = jsonField(line, "key");
+                if (cryptogram != null && key != null) {
+                    found.put(cryptogram.toLowerCase(), key.getBytes(StandardCharsets.ISO_8859_1));
+                }
+            }
+        }
+        return found;
+    }
+
+    // Value of a string field of a result line written by LookupServer, null if it is null or missing
+    private static String jsonField(String line, String name) {
+        int start = line.indexOf("\"" + name + "\": \"");
+        if (start < 0) {
+            return null;
+        }
+
+        StringBuilder value = new StringBuilder();
+        for (int i = start + name.length() + 5; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                return value.toString();
+            }
+            if (c == '\\' && i + 1 < line.length()) {
+                c = line.charAt(++i);
+                if (c == 'u' && i + 4 < line.length()) {
+                    c = (char) Integer.parseInt(line.substring(i + 1, i + 5), 16);
+                    i += 4;
+                }
+            }
+            value.append(c);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        requests.shutdownNow();
+        stopWorkers(workers);
+    }
+
+    // Workers are asked to stop (their shutdown hooks run) and are killed if they do not
+    private static void stopWorkers(List<Process> workers) {
+        for (Process worker : workers) {
+            worker.destroy();
+        }
+        for (Process worker : workers) {
+            try {
+                if (!worker.waitFor(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    worker.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                worker.destroyForcibly();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Runs Main of this program in a new JVM with the same class path
+    private static Process startWorker(int id, List<String> args) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(Main.class.getName());
+        command.addAll(args);
+
+        Process worker = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        Thread output = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(worker.getInputStream()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    System.out.println("[fragment " + id + "] " + line);
+                }
+            } catch (IOException e) {
+                // the worker has been stopped
+            }
+        }, "shard-output-" + id);
+        output.setDaemon(true);
+        output.start();
+
+        return worker;
+    }
+
+    // A port which is free at the moment, the worker binds it shortly after
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void awaitListening(int id, Process worker, int port) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+
+        while (true) {
+            if (!worker.isAlive()) {
+                throw new IOException("fragment " + id + " zakończył się przed uruchomieniem serwera (kod " + worker.exitValue() + ")");
+            }
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), (int) STARTUP_POLL_MILLIS);
+                return;
+            } catch (IOException e) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IOException("fragment " + id + " nie nasłuchuje na porcie " + port + " po " + STARTUP_TIMEOUT_MILLIS / 1000 + "s");
+                }
+            }
+            Thread.sleep(STARTUP_POLL_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Prints the duration of every operation phase when it ends, as the command line tool reports its work (-tm).
+ * Inner phases are ignored, so the chain loops pay only for the call. The generation slices of a worker are summed
+ * and printed once per worker when the generation ends, a large table has thousands of them.
+ */
+public class TimingTracer implements Tracer {
+    private final static int MAX_DEPTH = 16; // operation phases nest only a few levels deep
+
+    private final Map<Integer, LongAdder> workerNanos = new ConcurrentHashMap<>(); // slices of the running generation
+
+    private final ThreadLocal<Marks> marks = ThreadLocal.withInitial(() -> new Marks() {
+        private final long[] startNanos = new long[MAX_DEPTH];
+        private int depth;
+
+        @Override
+        public void enter(Phase phase) {
+            if (phase.isOperation()) {
+                if (depth < MAX_DEPTH) {
+                    startNanos[depth] = System.nanoTime();
+                }
+                depth++;
+            }
+        }
+
+        @Override
+        public void exit(Phase phase) {
+            if (phase.isOperation()) {
+                depth--;
+                if (depth < MAX_DEPTH) {
+                    finished(phase, System.nanoTime() - startNanos[depth]);
+                }
+            }
+        }
+    });
+
+    @Override
+    public Marks marks() {
+        return marks.get();
+    }
+
+    private void finished(Phase phase, long nanos) {
+        if (phase == Phase.GENERATION_SLICE) {
+            workerNanos.computeIfAbsent(workerId(), id -> new LongAdder()).add(nanos);
+            return;
+        }
+        if (phase == Phase.GENERATE) {
+            for (Map.Entry<Integer, LongAdder> worker : new TreeMap<>(workerNanos).entrySet()) {
+                System.out.println("Wątek " + worker.getKey() + " pracował łącznie " + seconds(worker.getValue().sum()) + "s");
+            }
+            workerNanos.clear();
+        }
+        print(phase, seconds(nanos));
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1000000 / 1000.0;
+    }
+
+    private static void print(Phase phase, double seconds) {
+        switch (phase) {
+            case GENERATE:
+                System.out.println("Generowanie tablicy zakończone w " + seconds + "s");
+                break;
+            case LOOKUP:
+                System.out.println("Przeszukiwanie tablicy zakończone w " + seconds + "s");
+                break;
+            case SAVE:
+                System.out.println("Zapis do pliku zakończony w " + seconds + "s");
+                break;
+            case EXPORT:
+                System.out.println("Zapis do pliku tekstowego zakończony w " + seconds + "s");
+                break;
+            case LOAD:
+                System.out.println("Wczytywanie tablicy zakończone w " + seconds + "s");
+                break;
+            default:
+                break;
+        }
+    }
+
+    private static int workerId() {
+        Thread thread = Thread.currentThread();
+        return thread instanceof ForkJoinWorkerThread ? ((ForkJoinWorkerThread) thread).getPoolIndex() : 0;
+    }
+}
@@ -0,0 +1,56 @@
+/**
+ * Listener of the phases of table work, called by RainbowTable when a thread enters and leaves a phase.
+ * Operation phases (generate, lookup, save, load ...) are entered once per call; inner phases (DES key setup,
+ * encryption, reduction, index probe, chain replay) are entered in the chain loops, so implementations have to
+ * keep them to a few stores. Every thread gets its own Marks once per walk or task and passes the phases to it.
+ * NONE does nothing and, being the only implementation a run uses, is inlined away by the JIT.
+ */
+public interface Tracer {
+
+    enum Phase {
+        GENERATE(true),
+        GENERATION_SLICE(true), // the share of one scheduler worker in a segment of chains
+        LOOKUP(true),
+        SAVE(true),
+        EXPORT(true),
+        LOAD(true),
+        DES_INIT(false), // key schedule of the scalar engine, the bitsliced engine has none
+        ENCRYPT(false),
+        REDUCE(false),
+        INDEX_PROBE(false), // end key lookups in the table store
+        CHAIN_REPLAY(false); // regeneration of a stored chain to confirm a matching end key
+
+        private final boolean operation;
+
+        Phase(boolean operation) {
+            this.operation = operation;
+        }
+
+        // True for the phases of whole calls, false for the inner phases of the chain loops
+        public boolean isOperation() {
+            return operation;
+        }
+    }
+
+    // Phases of one thread, entered and left in LIFO order
+    interface Marks {
+        void enter(Phase phase);
+
+        void exit(Phase phase);
+    }
+
+    Marks NO_MARKS = new Marks() {
+        @Override
+        public void enter(Phase phase) {
+        }
+
+        @Override
+        public void exit(Phase phase) {
+        }
+    };
+
+    Tracer NONE = () -> NO_MARKS;
+
+    // Marks of the current thread
+    Marks marks();
+}
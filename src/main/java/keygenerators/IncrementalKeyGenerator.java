@@ -1,47 +1,42 @@
 package keygenerators;
 
-import java.math.BigInteger;
-
 public class IncrementalKeyGenerator extends KeyGenerator {
 
-	private BigInteger counter;
-	private final BigInteger bytesetLength; // stored for performance reasons
+	private long counter; // unsigned, the default byteset of size 256 spans all 2^64 values
+	private final long bytesetLength; // stored for performance reasons
 
 
-	public IncrementalKeyGenerator(BigInteger startValue) {
+	public IncrementalKeyGenerator(long startValue) {
 		super(); // NOTE: generates byteset of size 256, used below
 		this.counter = startValue;
-		this.bytesetLength = BigInteger.valueOf(256);
+		this.bytesetLength = 256;
 	}
 
-	public IncrementalKeyGenerator(byte[] byteset, BigInteger startValue) {
-		super(byteset);
-		this.counter = startValue;
-		this.bytesetLength = BigInteger.valueOf(byteset.length);
-	}
 	public IncrementalKeyGenerator() {
-		this(BigInteger.ZERO);
+		this(0L);
 	}
 
 	public IncrementalKeyGenerator(byte[] byteset) {
-		this(byteset, BigInteger.ZERO);
+		this(byteset, 0L);
 	}
 
 	public IncrementalKeyGenerator(byte[] byteset, long startValue) {
-		this(byteset, BigInteger.valueOf(startValue));
+		super(byteset);
+		this.counter = startValue;
+		this.bytesetLength = byteset.length;
 	}
 
 	@Override
 	public byte[] next(Object incrementObject) {
 		Long increment = (Long) incrementObject;
 		byte[] key = new byte[8];
-		BigInteger counterCurrent = counter;
+		long counterCurrent = counter;
 		for (int i = 0; i < 8; i++) {
-			key[i] = byteset[counterCurrent.mod(bytesetLength).intValue()];
-			counterCurrent = counterCurrent.divide(bytesetLength);
+			key[i] = byteset[(int) Long.remainderUnsigned(counterCurrent, bytesetLength)];
+			counterCurrent = Long.divideUnsigned(counterCurrent, bytesetLength);
 		}
 
-		counter = counter.add(BigInteger.valueOf(increment));
+		counter += increment;
 		return key;
 	}
 }
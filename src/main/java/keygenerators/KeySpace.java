@@ -0,0 +1,183 @@
+package keygenerators;
+
+import java.util.Arrays;
+
+/**
+ * Keys of a table: length characters of charset, followed up to the DES key size by charset[0]. Key with index i
+ * has the base-radix digits of i as its characters, least significant first. The codec works on int arithmetic
+ * (the space is limited to Integer.MAX_VALUE keys); for small radices indexToKey emits several characters per
+ * division from a precomputed table.
+ */
+public final class KeySpace {
+
+	public static final int KEY_BYTES = 8; // DES key size
+	public static final KeySpace DIGITS = new KeySpace("0123456789".getBytes(), KEY_BYTES);
+
+	private static final String[][] NAMED_CHARSETS = {
+			{"digits", "0123456789"},
+			{"hex", "0123456789abcdef"},
+			{"alnum", "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"}
+	};
+	private static final int MAX_CHUNK_ENTRIES = 4096; // keys of a chunk table, small enough to stay in the L1 cache
+
+	private final byte[] charset;
+	private final int length;
+	private final int radix;
+	private final int[] charIndex; // position of every byte value in charset, -1 if absent
+	private final long size;
+	private final int chunkDigits; // characters emitted per division by indexToKey, 1 without a chunk table
+	private final int chunkModulus; // radix^chunkDigits
+	private final byte[] chunkChars; // characters of every chunk value, chunkDigits per value, least significant first
+
+	public KeySpace(byte[] charset, int length) {
+		if (charset.length < 2 || charset.length > 256) {
+			throw new IllegalArgumentException("Zestaw znaków kluczy musi mieć od 2 do 256 znaków");
+		}
+		if (length < 1 || length > KEY_BYTES) {
+			throw new IllegalArgumentException("Długość hasła musi być pomiędzy 1 a " + KEY_BYTES);
+		}
+
+		this.charset = charset.clone();
+		this.length = length;
+		this.radix = charset.length;
+		this.charIndex = new int[256];
+		Arrays.fill(charIndex, -1);
+		for (int i = 0; i < radix; i++) {
+			if (charIndex[charset[i] & 0xFF] >= 0) {
+				throw new IllegalArgumentException("Zestaw znaków kluczy zawiera powtórzony znak: " + (char) (charset[i] & 0xFF));
+			}
+			charIndex[charset[i] & 0xFF] = i;
+		}
+
+		long size = 1;
+		for (int i = 0; i < length && size <= Integer.MAX_VALUE; i++) {
+			size *= radix;
+		}
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Zbyt duża przestrzeń kluczy: " + radix + "^" + length);
+		}
+		this.size = size;
+
+		int chunkDigits = 1, chunkModulus = radix;
+		while (chunkDigits < length && (long) chunkModulus * radix <= MAX_CHUNK_ENTRIES) {
+			chunkDigits++;
+			chunkModulus *= radix;
+		}
+		this.chunkDigits = chunkDigits;
+		this.chunkModulus = chunkModulus;
+		this.chunkChars = new byte[chunkModulus * chunkDigits];
+		for (int value = 0; value < chunkModulus; value++) {
+			for (int d = 0, rest = value; d < chunkDigits; d++, rest /= radix) {
+				chunkChars[value * chunkDigits + d] = charset[rest % radix];
+			}
+		}
+	}
+
+	/**
+	 * Key space of a named charset (digits, hex, alnum) or, for any other name, of the characters of the name itself,
+	 * which have to be printable ASCII characters other than space, so that keys survive the text table format.
+	 */
+	public static KeySpace of(String charset, int length) {
+		for (String[] named : NAMED_CHARSETS) {
+			if (named[0].equals(charset)) {
+				return new KeySpace(named[1].getBytes(), length);
+			}
+		}
+		if (!charset.matches("^[\\x21-\\x7e]*$")) {
+			throw new IllegalArgumentException("Zestaw znaków kluczy może zawierać tylko drukowalne znaki ASCII bez spacji");
+		}
+		return new KeySpace(charset.getBytes(), length);
+	}
+
+	public byte[] getCharset() {
+		return charset.clone();
+	}
+
+	public int getLength() {
+		return length;
+	}
+
+	public int getRadix() {
+		return radix;
+	}
+
+	// Number of keys, indices are 0 .. size() - 1
+	public long size() {
+		return size;
+	}
+
+	// Bits of a key index
+	public int getBitsPerKey() {
+		return 64 - Long.numberOfLeadingZeros(size - 1);
+	}
+
+	// radix^digits, e.g. the modulus of keys ending with digits charset[0] characters
+	public long power(int digits) {
+		long power = 1;
+		for (int i = 0; i < digits; i++) {
+			power *= radix;
+		}
+		return power;
+	}
+
+	// Writes the KEY_BYTES characters of the key with the index to key
+	public void indexToKey(long index, byte[] key) {
+		int rest = (int) index, i = 0;
+
+		for (; i + chunkDigits <= length; i += chunkDigits) {
+			System.arraycopy(chunkChars, (rest % chunkModulus) * chunkDigits, key, i, chunkDigits);
+			rest /= chunkModulus;
+		}
+		for (; i < length; i++) {
+			key[i] = charset[rest % radix];
+			rest /= radix;
+		}
+		for (; i < KEY_BYTES; i++) {
+			key[i] = charset[0];
+		}
+	}
+
+	public long keyToIndex(byte[] key) {
+		long index = 0;
+		for (int i = length - 1; i >= 0; i--) {
+			index = index * radix + charIndex[key[i] & 0xFF];
+		}
+		return index;
+	}
+
+	// True if key is a key of this space, including its padding
+	public boolean isValidKey(byte[] key) {
+		if (key.length != KEY_BYTES) {
+			return false;
+		}
+		for (int i = 0; i < KEY_BYTES; i++) {
+			if (i < length ? charIndex[key[i] & 0xFF] < 0 : key[i] != charset[0]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public boolean isDefault() {
+		return equals(DIGITS);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof KeySpace)) {
+			return false;
+		}
+		KeySpace other = (KeySpace) o;
+		return length == other.length && Arrays.equals(charset, other.charset);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * Arrays.hashCode(charset) + length;
+	}
+
+	@Override
+	public String toString() {
+		return length + " x [" + new String(charset) + "]";
+	}
+}
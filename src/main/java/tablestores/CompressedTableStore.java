@@ -0,0 +1,401 @@
+package tablestores;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Read-only view of the chains of a compressed table file, mapped into memory. Chains sorted by end key are coded in
+ * blocks of BLOCK_CHAINS: the gap to the previous end key (in units of the greatest common divisor of all gaps, which
+ * for distinguished points is at least their modulus) in Rice code, about log2(mean gap) + 2 bits for end keys spread
+ * evenly over the key space, and the start key in just enough bits for the highest one, since start keys are counted
+ * from 0. The first end key and the offset of every block are kept in memory, so a lookup decodes a single block.
+ *
+ * Layout: size, riceBits, startKeyBits, gapBits, gapUnit, the blocks (each starting at a byte boundary), and at the
+ * end of the file the index of (first end key, byte offset) of every block, which is known only once the blocks are written.
+ */
+public class CompressedTableStore implements TableStore {
+
+	public static final int BLOCK_CHAINS = 64;
+	private static final int HEADER_BYTES = 2 * Long.BYTES + 3 * Integer.BYTES;
+	private static final int MAX_SEGMENT_BYTES = 1 << 30; // single MappedByteBuffer is limited to 2GB
+	private static final int ESCAPE_QUOTIENT = 32; // a longer unary part is replaced by the gap written in gapBits
+
+	private final long size;
+	private final int riceBits;
+	private final int startKeyBits;
+	private final int gapBits;
+	private final long gapUnit;
+	private final long[] firstEndKeys;
+	private final long[] blockOffsets;
+	private final MappedByteBuffer[] segments;
+
+	public CompressedTableStore(FileChannel channel, long offset) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		while (header.hasRemaining()) {
+			if (channel.read(header, offset + header.position()) < 0) {
+				throw new IOException("Plik tablicy jest niekompletny");
+			}
+		}
+		header.flip();
+		size = header.getLong();
+		riceBits = header.getInt();
+		startKeyBits = header.getInt();
+		gapBits = header.getInt();
+		gapUnit = header.getLong();
+
+		int nBlocks = (int) ((size + BLOCK_CHAINS - 1) / BLOCK_CHAINS);
+		long dataOffset = offset + HEADER_BYTES;
+		long dataBytes = channel.size() - dataOffset - (long) nBlocks * 2 * Long.BYTES;
+		if (dataBytes < 0) {
+			throw new IOException("Plik tablicy jest niekompletny");
+		}
+
+		// The index is copied to the heap, the blocks stay in the mapping and are read on demand
+		firstEndKeys = new long[nBlocks];
+		blockOffsets = new long[nBlocks];
+		MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + dataBytes, (long) nBlocks * 2 * Long.BYTES);
+		for (int b = 0; b < nBlocks; b++) {
+			firstEndKeys[b] = index.getLong();
+			blockOffsets[b] = index.getLong();
+		}
+
+		segments = new MappedByteBuffer[(int) ((dataBytes + MAX_SEGMENT_BYTES - 1) / MAX_SEGMENT_BYTES)];
+		for (int i = 0; i < segments.length; i++) {
+			long first = (long) i * MAX_SEGMENT_BYTES;
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + first, Math.min(MAX_SEGMENT_BYTES, dataBytes - first));
+		}
+	}
+
+	/**
+	 * Writes the chains in the layout read by the constructor. chains visits them in ascending end key order and is
+	 * called twice, first to measure the gaps and start keys. End keys and start keys must be below 2^bitsPerKey.
+	 */
+	public static void write(DataOutputStream out, int bitsPerKey, Consumer<ChainVisitor> chains) throws IOException {
+		Statistics statistics = new Statistics();
+		chains.accept(statistics);
+
+		long gapUnit = Math.max(1, statistics.gapUnit);
+		long meanGap = statistics.size > 1 ? (statistics.lastEndKey - statistics.firstEndKey) / gapUnit / (statistics.size - 1) : 1;
+		// Optimal for geometrically distributed gaps: 2^riceBits close to ln(2) times their mean
+		int riceBits = Math.max(0, 63 - Long.numberOfLeadingZeros(meanGap * 69 / 100));
+		int startKeyBits = Math.max(1, 64 - Long.numberOfLeadingZeros(statistics.maxStartKey));
+
+		out.writeLong(statistics.size);
+		out.writeInt(riceBits);
+		out.writeInt(startKeyBits);
+		out.writeInt(bitsPerKey);
+		out.writeLong(gapUnit);
+
+		Encoder encoder = new Encoder(out, statistics.size, riceBits, startKeyBits, bitsPerKey, gapUnit);
+		try {
+			chains.accept(encoder);
+			encoder.bits.flush();
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		for (int b = 0; b < encoder.firstEndKeys.length; b++) {
+			out.writeLong(encoder.firstEndKeys[b]);
+			out.writeLong(encoder.blockOffsets[b]);
+		}
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public long get(long endKey) {
+		int block = blockOf(endKey, 0);
+		if (block < 0) {
+			return NOT_FOUND;
+		}
+
+		Cursor cursor = new Cursor(blockOffsets[block]);
+		long key = firstEndKeys[block];
+		int count = blockSize(block);
+
+		for (int i = 0; ; ) {
+			long startKey = cursor.read(startKeyBits);
+			if (key == endKey) {
+				return startKey;
+			}
+			if (++i == count) {
+				return NOT_FOUND;
+			}
+			key += cursor.gap();
+			if (key > endKey) {
+				return NOT_FOUND;
+			}
+		}
+	}
+
+	// Every block holding some of the end keys is decoded once, the keys in it are found by binary search
+	@Override
+	public void getSorted(long[] endKeys, long[] startKeys, int count) {
+		long[] blockEndKeys = new long[BLOCK_CHAINS], blockStartKeys = new long[BLOCK_CHAINS];
+		int decoded = -1, decodedCount = 0;
+
+		for (int i = 0; i < count; i++) {
+			long endKey = endKeys[i];
+			int block = blockOf(endKey, Math.max(decoded, 0));
+			if (block < 0) {
+				startKeys[i] = NOT_FOUND;
+				continue;
+			}
+			if (block != decoded) {
+				decodedCount = decode(block, blockEndKeys, blockStartKeys);
+				decoded = block;
+			}
+
+			int position = Arrays.binarySearch(blockEndKeys, 0, decodedCount, endKey);
+			startKeys[i] = position >= 0 ? blockStartKeys[position] : NOT_FOUND;
+		}
+	}
+
+	@Override
+	public boolean put(long endKey, long startKey) {
+		throw new UnsupportedOperationException("Tablica wczytana z pliku binarnego jest tylko do odczytu");
+	}
+
+	@Override
+	public boolean putIfAbsent(long endKey, long startKey) {
+		throw new UnsupportedOperationException("Tablica wczytana z pliku binarnego jest tylko do odczytu");
+	}
+
+	@Override
+	public long slots() {
+		return size;
+	}
+
+	@Override
+	public void forEach(long from, long to, ChainVisitor visitor) {
+		long[] blockEndKeys = new long[BLOCK_CHAINS], blockStartKeys = new long[BLOCK_CHAINS];
+
+		for (long i = from; i < to; ) {
+			int block = (int) (i / BLOCK_CHAINS);
+			int count = decode(block, blockEndKeys, blockStartKeys);
+			long blockFirst = (long) block * BLOCK_CHAINS;
+
+			for (int k = (int) (i - blockFirst); k < count && i < to; k++, i++) {
+				visitor.visit(blockEndKeys[k], blockStartKeys[k]);
+			}
+		}
+	}
+
+	@Override
+	public boolean isSorted() {
+		return true;
+	}
+
+	// Last block whose first end key is not above endKey, searched from the block from on; -1 if there is none
+	private int blockOf(long endKey, int from) {
+		int low = from, high = firstEndKeys.length - 1;
+
+		if (high < 0 || endKey < firstEndKeys[0]) {
+			return -1;
+		}
+		if (endKey < firstEndKeys[low]) {
+			low = 0;
+		}
+		while (low < high) {
+			int mid = (low + high + 1) >>> 1;
+			if (firstEndKeys[mid] <= endKey) {
+				low = mid;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	private int blockSize(int block) {
+		return (int) Math.min(BLOCK_CHAINS, size - (long) block * BLOCK_CHAINS);
+	}
+
+	private int decode(int block, long[] endKeys, long[] startKeys) {
+		Cursor cursor = new Cursor(blockOffsets[block]);
+		int count = blockSize(block);
+		long key = firstEndKeys[block];
+
+		for (int k = 0; k < count; k++) {
+			if (k > 0) {
+				key += cursor.gap();
+			}
+			endKeys[k] = key;
+			startKeys[k] = cursor.read(startKeyBits);
+		}
+		return count;
+	}
+
+	private int byteAt(long position) {
+		return segments[(int) (position / MAX_SEGMENT_BYTES)].get((int) (position % MAX_SEGMENT_BYTES)) & 0xFF;
+	}
+
+	// Reads the bits of the data from a position on, most significant bit of every byte first, a byte at a time
+	private final class Cursor {
+		private long position; // next byte to load
+		private long buffer; // loaded bits, the low available of them not read yet
+		private int available;
+
+		Cursor(long byteOffset) {
+			this.position = byteOffset;
+		}
+
+		// Reads n (at most 32) bits
+		long read(int n) {
+			while (available < n) {
+				load();
+			}
+			available -= n;
+			return (buffer >>> available) & ((1L << n) - 1);
+		}
+
+		// Difference between the end key and the previous one
+		long gap() {
+			int quotient = 0;
+			while (true) {
+				if (available == 0) {
+					load();
+				}
+				// Leading ones of the unread bits, at most available of them
+				int ones = Math.min(Long.numberOfLeadingZeros(~(buffer << (Long.SIZE - available))), ESCAPE_QUOTIENT - quotient);
+				quotient += ones;
+				available -= ones;
+				if (quotient == ESCAPE_QUOTIENT) {
+					return (read(gapBits) + 1) * gapUnit;
+				}
+				if (available > 0) {
+					available--; // the zero ending the unary part
+					return ((((long) quotient << riceBits) | read(riceBits)) + 1) * gapUnit;
+				}
+			}
+		}
+
+		private void load() {
+			buffer = (buffer << 8) | byteAt(position++);
+			available += 8;
+		}
+	}
+
+	private static class Statistics implements ChainVisitor {
+		long size;
+		long firstEndKey;
+		long lastEndKey;
+		long gapUnit; // greatest common divisor of the gaps, 0 before the first gap
+		long maxStartKey;
+
+		@Override
+		public void visit(long endKey, long startKey) {
+			if (size == 0) {
+				firstEndKey = endKey;
+			} else if (endKey <= lastEndKey) {
+				throw new IllegalArgumentException("Łańcuchy muszą być posortowane według różnych punktów końcowych");
+			} else {
+				gapUnit = gcd(gapUnit, endKey - lastEndKey);
+			}
+			lastEndKey = endKey;
+			maxStartKey = Math.max(maxStartKey, startKey);
+			size++;
+		}
+
+		private static long gcd(long a, long b) {
+			while (b != 0) {
+				long t = a % b;
+				a = b;
+				b = t;
+			}
+			return a;
+		}
+	}
+
+	private static class Encoder implements ChainVisitor {
+		final BitOutput bits;
+		final long[] firstEndKeys;
+		final long[] blockOffsets;
+		private final int riceBits;
+		private final int startKeyBits;
+		private final int gapBits;
+		private final long gapUnit;
+		private long count;
+		private long lastEndKey;
+
+		Encoder(DataOutputStream out, long size, int riceBits, int startKeyBits, int gapBits, long gapUnit) {
+			this.bits = new BitOutput(out);
+			int nBlocks = (int) ((size + BLOCK_CHAINS - 1) / BLOCK_CHAINS);
+			this.firstEndKeys = new long[nBlocks];
+			this.blockOffsets = new long[nBlocks];
+			this.riceBits = riceBits;
+			this.startKeyBits = startKeyBits;
+			this.gapBits = gapBits;
+			this.gapUnit = gapUnit;
+		}
+
+		@Override
+		public void visit(long endKey, long startKey) {
+			if (count % BLOCK_CHAINS == 0) {
+				bits.flush();
+				int block = (int) (count / BLOCK_CHAINS);
+				firstEndKeys[block] = endKey;
+				blockOffsets[block] = bits.bytes;
+			} else {
+				long units = (endKey - lastEndKey) / gapUnit - 1;
+				long quotient = units >>> riceBits;
+				if (quotient < ESCAPE_QUOTIENT) {
+					bits.write((1L << quotient) - 1, (int) quotient);
+					bits.write(0, 1);
+					bits.write(units, riceBits);
+				} else {
+					bits.write((1L << ESCAPE_QUOTIENT) - 1, ESCAPE_QUOTIENT);
+					bits.write(units, gapBits);
+				}
+			}
+			bits.write(startKey, startKeyBits);
+			lastEndKey = endKey;
+			count++;
+		}
+	}
+
+	// Writes to the stream bit by bit, most significant bit first
+	private static class BitOutput {
+		private final DataOutputStream out;
+		long bytes; // complete bytes written
+		private long pending; // bits not written to the stream yet, in the low pendingBits bits
+		private int pendingBits;
+
+		BitOutput(DataOutputStream out) {
+			this.out = out;
+		}
+
+		// Writes the n (at most 32) low bits of value
+		void write(long value, int n) {
+			if (n == 0) {
+				return;
+			}
+			pending = (pending << n) | (value & ((1L << n) - 1));
+			pendingBits += n;
+			try {
+				while (pendingBits >= 8) {
+					pendingBits -= 8;
+					out.write((int) (pending >>> pendingBits));
+					bytes++;
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		// Pads the last byte with zeros, so that the next bit starts a byte
+		void flush() {
+			if (pendingBits > 0) {
+				write(0, 8 - pendingBits);
+			}
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package tablestores;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Builds a sorted table of any size with bounded memory. Records (endKey << bitsPerKey | startKey) are collected
+ * in a buffer of at most memoryBytes, which is sorted and spilled to a run file whenever it fills up. build()
+ * merges the runs into one file sorted by end key, keeping the record with the lowest start key for every end key,
+ * and maps it as a MappedTableStore. Sorted stores (e.g. of table files) are merged as runs of their own.
+ */
+public class ExternalSortBuilder {
+
+	private static final int MIN_READ_BUFFER = 4096;
+	private static final int MAX_READ_BUFFER = 1 << 20;
+	private static final int STORE_READ_BLOCK = 8192; // records read from a sorted store at once
+
+	private final File directory;
+	private final int bitsPerKey;
+	private final int recordBytes;
+	private final long memoryBytes;
+	private final long[] buffer;
+	private final List<File> runs = new ArrayList<>();
+	private final List<TableStore> sortedStores = new ArrayList<>();
+	private int buffered;
+	private File merged;
+
+	public ExternalSortBuilder(File directory, long memoryBytes, int bitsPerKey) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Nie udało się utworzyć katalogu " + directory);
+		}
+		// Left over by an interrupted run, the chains are generated (or replayed) again
+		File[] staleRuns = directory.listFiles((dir, name) -> name.startsWith("run-") || name.equals("merged.bin"));
+		for (File run : staleRuns != null ? staleRuns : new File[0]) {
+			run.delete();
+		}
+
+		this.directory = directory;
+		this.bitsPerKey = bitsPerKey;
+		this.recordBytes = MappedTableStore.recordBytes(bitsPerKey);
+		this.memoryBytes = memoryBytes;
+		this.buffer = new long[(int) Math.min(Integer.MAX_VALUE - 8, Math.max(1, memoryBytes / Long.BYTES))];
+	}
+
+	public void add(long record) throws IOException {
+		if (buffered == buffer.length) {
+			spill();
+		}
+		buffer[buffered++] = record;
+	}
+
+	/**
+	 * Adds the chains of the store. A sorted store is read by build() as a run, without being copied, so it has to stay
+	 * readable until then; the chains of other stores are added one by one.
+	 */
+	public void addAll(TableStore store) throws IOException {
+		if (store.isSorted()) {
+			sortedStores.add(store);
+			return;
+		}
+
+		try {
+			store.forEach((endKey, startKey) -> {
+				try {
+					add((endKey << bitsPerKey) | startKey);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	public MappedTableStore build() throws IOException {
+		if (buffered > 0) {
+			spill();
+		}
+
+		merged = new File(directory, "merged.bin");
+		long size = merge(merged);
+
+		for (File run : runs) {
+			run.delete();
+		}
+		runs.clear();
+		sortedStores.clear();
+
+		try (FileChannel channel = FileChannel.open(merged.toPath(), StandardOpenOption.READ)) {
+			return new MappedTableStore(channel, 0, size, bitsPerKey);
+		}
+	}
+
+	// Removes the run files and the merged file, the store returned by build stays usable while it is mapped
+	public void delete() {
+		for (File run : runs) {
+			run.delete();
+		}
+		if (merged != null) {
+			merged.delete();
+		}
+		directory.delete();
+	}
+
+	private void spill() throws IOException {
+		Arrays.sort(buffer, 0, buffered);
+
+		File run = new File(directory, String.format("run-%06d.bin", runs.size()));
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), MAX_READ_BUFFER))) {
+			for (int i = 0; i < buffered; i++) {
+				writeRecord(out, buffer[i]);
+			}
+		}
+
+		runs.add(run);
+		buffered = 0;
+	}
+
+	private long merge(File output) throws IOException {
+		// Read buffers share the memory budget, but stay large enough for sequential reads
+		int readBuffer = (int) Math.max(MIN_READ_BUFFER, Math.min(MAX_READ_BUFFER, memoryBytes / (runs.size() + 1)));
+		PriorityQueue<Run> queue = new PriorityQueue<>(Math.max(1, runs.size() + sortedStores.size()), (a, b) -> Long.compare(a.record, b.record));
+		long size = 0;
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output), readBuffer))) {
+			try {
+				List<Run> sources = new ArrayList<>();
+				for (File run : runs) {
+					sources.add(new RunReader(run, readBuffer));
+				}
+				for (TableStore store : sortedStores) {
+					sources.add(new StoreRun(store));
+				}
+				for (Run source : sources) {
+					if (source.next()) {
+						queue.add(source);
+					} else {
+						source.close();
+					}
+				}
+
+				long lastEndKey = -1;
+				while (!queue.isEmpty()) {
+					Run reader = queue.poll();
+					long endKey = reader.record >>> bitsPerKey;
+
+					// Records with equal end keys arrive ordered by start key, the first one is kept
+					if (endKey != lastEndKey) {
+						writeRecord(out, reader.record);
+						lastEndKey = endKey;
+						size++;
+					}
+
+					if (reader.next()) {
+						queue.add(reader);
+					} else {
+						reader.close();
+					}
+				}
+			} finally {
+				for (Run reader : queue) {
+					reader.close();
+				}
+			}
+		}
+
+		return size;
+	}
+
+	private void writeRecord(DataOutputStream out, long record) throws IOException {
+		for (int k = recordBytes - 1; k >= 0; k--) {
+			out.write((int) (record >>> (8 * k)));
+		}
+	}
+
+	// Sorted records, record is the current one after next() has returned true
+	private abstract static class Run implements Closeable {
+		long record;
+
+		abstract boolean next() throws IOException;
+
+		@Override
+		public void close() throws IOException {
+		}
+	}
+
+	private class RunReader extends Run {
+		private final DataInputStream in;
+		private long remaining;
+
+		RunReader(File run, int bufferSize) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), bufferSize));
+			this.remaining = run.length() / recordBytes;
+		}
+
+		@Override
+		boolean next() throws IOException {
+			if (remaining == 0) {
+				return false;
+			}
+
+			long value = 0;
+			for (int k = 0; k < recordBytes; k++) {
+				value = (value << 8) | in.readUnsignedByte();
+			}
+			record = value;
+			remaining--;
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	private class StoreRun extends Run {
+		private final TableStore store;
+		private final long[] block = new long[STORE_READ_BLOCK];
+		private long position; // first slot of the store not read yet
+		private int count, next;
+
+		StoreRun(TableStore store) {
+			this.store = store;
+		}
+
+		@Override
+		boolean next() {
+			while (next == count) {
+				if (position == store.slots()) {
+					return false;
+				}
+				long to = Math.min(store.slots(), position + STORE_READ_BLOCK);
+				count = 0;
+				next = 0;
+				store.forEach(position, to, (endKey, startKey) -> block[count++] = (endKey << bitsPerKey) | startKey);
+				position = to;
+			}
+			record = block[next++];
+			return true;
+		}
+	}
+}
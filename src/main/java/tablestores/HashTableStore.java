@@ -0,0 +1,155 @@
+package tablestores;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Open-addressing hash table with linear probing. Every slot is a single long (endKey << bitsPerKey | startKey),
+ * so a probe touches one cache line and a chain costs 8 bytes / load factor. Slots may live on the heap
+ * or off-heap in direct buffers. Not thread-safe for writes.
+ */
+public class HashTableStore implements TableStore {
+
+	private static final long EMPTY = -1L; // never a valid slot, keys use at most 62 bits together
+	private static final double MAX_LOAD_FACTOR = 0.75;
+	private static final int SEGMENT_BITS = 26; // 2^26 slots == 512MB per buffer, direct buffers are limited to 2GB
+	private static final int MIN_CAPACITY = 16;
+
+	private final int bitsPerKey;
+	private final long keyMask;
+	private final boolean offHeap;
+	private LongBuffer[] segments;
+	private long capacity;
+	private int capacityBits;
+	private long size;
+
+	public HashTableStore(long expectedSize, int bitsPerKey, boolean offHeap) {
+		if (2 * bitsPerKey > 62) {
+			throw new IllegalArgumentException("Klucze nie mieszczą się w jednym polu tablicy: " + bitsPerKey + " bitów");
+		}
+
+		this.bitsPerKey = bitsPerKey;
+		this.keyMask = (1L << bitsPerKey) - 1;
+		this.offHeap = offHeap;
+		allocate(capacityFor(expectedSize));
+	}
+
+	private static long capacityFor(long expectedSize) {
+		long capacity = MIN_CAPACITY;
+		while (capacity * MAX_LOAD_FACTOR < expectedSize) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	private void allocate(long capacity) {
+		this.capacity = capacity;
+		this.capacityBits = Long.numberOfTrailingZeros(capacity);
+
+		long segmentSlots = Math.min(capacity, 1L << SEGMENT_BITS);
+		segments = new LongBuffer[(int) (capacity / segmentSlots)];
+		for (int i = 0; i < segments.length; i++) {
+			segments[i] = offHeap
+					? ByteBuffer.allocateDirect((int) segmentSlots * Long.BYTES).asLongBuffer()
+					: LongBuffer.allocate((int) segmentSlots);
+			for (int j = 0; j < segmentSlots; j++) {
+				segments[i].put(j, EMPTY);
+			}
+		}
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public long get(long endKey) {
+		for (long i = slotOf(endKey); ; i = (i + 1) & (capacity - 1)) {
+			long slot = read(i);
+			if (slot == EMPTY) {
+				return NOT_FOUND;
+			}
+			if (slot >>> bitsPerKey == endKey) {
+				return slot & keyMask;
+			}
+		}
+	}
+
+	@Override
+	public boolean put(long endKey, long startKey) {
+		return insert(endKey, startKey, true);
+	}
+
+	@Override
+	public boolean putIfAbsent(long endKey, long startKey) {
+		return insert(endKey, startKey, false);
+	}
+
+	private boolean insert(long endKey, long startKey, boolean replace) {
+		if (size + 1 > capacity * MAX_LOAD_FACTOR) {
+			grow();
+		}
+
+		for (long i = slotOf(endKey); ; i = (i + 1) & (capacity - 1)) {
+			long slot = read(i);
+			if (slot == EMPTY) {
+				write(i, (endKey << bitsPerKey) | startKey);
+				size++;
+				return true;
+			}
+			if (slot >>> bitsPerKey == endKey) {
+				if (replace) {
+					write(i, (endKey << bitsPerKey) | startKey);
+				}
+				return false;
+			}
+		}
+	}
+
+	@Override
+	public long slots() {
+		return capacity;
+	}
+
+	@Override
+	public void forEach(long from, long to, ChainVisitor visitor) {
+		for (long i = from; i < to; i++) {
+			long slot = read(i);
+			if (slot != EMPTY) {
+				visitor.visit(slot >>> bitsPerKey, slot & keyMask);
+			}
+		}
+	}
+
+	private void grow() {
+		LongBuffer[] oldSegments = segments;
+		long oldCapacity = capacity;
+
+		allocate(capacity << 1);
+		size = 0;
+
+		long segmentSlots = Math.min(oldCapacity, 1L << SEGMENT_BITS);
+		for (LongBuffer segment : oldSegments) {
+			for (int j = 0; j < segmentSlots; j++) {
+				long slot = segment.get(j);
+				if (slot != EMPTY) {
+					put(slot >>> bitsPerKey, slot & keyMask);
+				}
+			}
+		}
+	}
+
+	private long slotOf(long endKey) {
+		// Fibonacci hashing, the high bits of the product are the best mixed
+		return (endKey * 0x9E3779B97F4A7C15L) >>> (64 - capacityBits);
+	}
+
+	private long read(long i) {
+		return segments[(int) (i >>> SEGMENT_BITS)].get((int) (i & ((1 << SEGMENT_BITS) - 1)));
+	}
+
+	private void write(long i, long slot) {
+		segments[(int) (i >>> SEGMENT_BITS)].put((int) (i & ((1 << SEGMENT_BITS) - 1)), slot);
+	}
+}
@@ -0,0 +1,146 @@
+package tablestores;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read-only view of the chains of a binary table file, mapped into memory.
+ * Every chain is a fixed-width big-endian record (endKey << bitsPerKey | startKey), records are sorted by end key.
+ */
+public class MappedTableStore implements TableStore {
+
+	private static final int MAX_SEGMENT_BYTES = 1 << 30; // single MappedByteBuffer is limited to 2GB
+
+	private final MappedByteBuffer[] segments;
+	private final int recordBytes;
+	private final int recordsPerSegment;
+	private final int bitsPerKey;
+	private final long keyMask;
+	private final long size;
+
+	public MappedTableStore(FileChannel channel, long offset, long size, int bitsPerKey) throws IOException {
+		this.bitsPerKey = bitsPerKey;
+		this.keyMask = (1L << bitsPerKey) - 1;
+		this.recordBytes = recordBytes(bitsPerKey);
+		this.recordsPerSegment = MAX_SEGMENT_BYTES / recordBytes;
+		this.size = size;
+
+		if (channel.size() < offset + size * recordBytes) {
+			throw new IOException("Plik tablicy jest niekompletny");
+		}
+
+		int nSegments = (int) ((size + recordsPerSegment - 1) / recordsPerSegment);
+		segments = new MappedByteBuffer[nSegments];
+		for (int i = 0; i < nSegments; i++) {
+			long first = (long) i * recordsPerSegment;
+			long count = Math.min(recordsPerSegment, size - first);
+			segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * recordBytes, count * recordBytes);
+		}
+	}
+
+	public static int recordBytes(int bitsPerKey) {
+		return (2 * bitsPerKey + 7) / 8;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	// Binary search by end key
+	@Override
+	public long get(long endKey) {
+		long low = 0, high = size - 1;
+
+		while (low <= high) {
+			long mid = (low + high) >>> 1;
+			long record = record(mid);
+			long midEndKey = record >>> bitsPerKey;
+
+			if (midEndKey < endKey) {
+				low = mid + 1;
+			} else if (midEndKey > endKey) {
+				high = mid - 1;
+			} else {
+				return record & keyMask;
+			}
+		}
+
+		return NOT_FOUND;
+	}
+
+	// Merge join: each search gallops forward from the previous match, so dense keys cost a step and sparse keys a short search
+	@Override
+	public void getSorted(long[] endKeys, long[] startKeys, int count) {
+		long cursor = 0; // all records before the cursor end below the current end key
+
+		for (int i = 0; i < count; i++) {
+			long endKey = endKeys[i];
+			long bound = cursor;
+
+			for (long step = 1; bound < size && endKeyAt(bound) < endKey; step <<= 1) {
+				cursor = bound + 1;
+				bound += step;
+			}
+
+			long low = cursor, high = Math.min(bound, size);
+			while (low < high) {
+				long mid = (low + high) >>> 1;
+				if (endKeyAt(mid) < endKey) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+
+			cursor = low;
+			long record = low < size ? record(low) : NOT_FOUND;
+			startKeys[i] = low < size && record >>> bitsPerKey == endKey ? record & keyMask : NOT_FOUND;
+		}
+	}
+
+	@Override
+	public boolean put(long endKey, long startKey) {
+		throw new UnsupportedOperationException("Tablica wczytana z pliku binarnego jest tylko do odczytu");
+	}
+
+	@Override
+	public boolean putIfAbsent(long endKey, long startKey) {
+		throw new UnsupportedOperationException("Tablica wczytana z pliku binarnego jest tylko do odczytu");
+	}
+
+	@Override
+	public long slots() {
+		return size;
+	}
+
+	@Override
+	public void forEach(long from, long to, ChainVisitor visitor) {
+		for (long i = from; i < to; i++) {
+			long record = record(i);
+			visitor.visit(record >>> bitsPerKey, record & keyMask);
+		}
+	}
+
+	@Override
+	public boolean isSorted() {
+		return true;
+	}
+
+	private long endKeyAt(long i) {
+		return record(i) >>> bitsPerKey;
+	}
+
+	private long record(long i) {
+		MappedByteBuffer segment = segments[(int) (i / recordsPerSegment)];
+		int position = (int) (i % recordsPerSegment) * recordBytes;
+		long record = 0;
+
+		for (int k = 0; k < recordBytes; k++) {
+			record = (record << 8) | (segment.get(position + k) & 0xFF);
+		}
+
+		return record;
+	}
+}
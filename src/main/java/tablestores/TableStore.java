@@ -0,0 +1,50 @@
+package tablestores;
+
+/**
+ * Chains of a rainbow table, indexed by end key. Keys are indices in the key space (see RainbowTable.keyToIndex),
+ * so every key fits in a few dozen bits and no per-chain objects are needed.
+ */
+public interface TableStore {
+
+	long NOT_FOUND = -1L;
+
+	interface ChainVisitor {
+		void visit(long endKey, long startKey);
+	}
+
+	long size();
+
+	// Start key of the chain ending with endKey, NOT_FOUND if there is no such chain
+	long get(long endKey);
+
+	/**
+	 * Start keys of the chains ending with endKeys[0 .. count - 1], given in ascending order, as get would return them.
+	 * startKeys may be endKeys itself. Sorted stores join the keys with their chains in one forward pass.
+	 */
+	default void getSorted(long[] endKeys, long[] startKeys, int count) {
+		for (int i = 0; i < count; i++) {
+			startKeys[i] = get(endKeys[i]);
+		}
+	}
+
+	// Stores the chain, replacing a chain with the same end key; returns true if the end key was not present before
+	boolean put(long endKey, long startKey);
+
+	// Stores the chain only if no chain with the same end key is present; returns true if it was stored
+	boolean putIfAbsent(long endKey, long startKey);
+
+	// Positions of the store that ranges passed to forEach refer to, chains occupy size() of them
+	long slots();
+
+	// Visits the chains stored at positions from .. to - 1, disjoint ranges may be visited by concurrent readers
+	void forEach(long from, long to, ChainVisitor visitor);
+
+	default void forEach(ChainVisitor visitor) {
+		forEach(0, slots(), visitor);
+	}
+
+	// True if forEach visits the chains in ascending end key order
+	default boolean isSorted() {
+		return false;
+	}
+}
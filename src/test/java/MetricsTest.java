@@ -0,0 +1,69 @@
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.Closeable;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The metrics dump is JSON lines whatever the default locale: a Polish locale formats decimals with a comma.
+ */
+public class MetricsTest {
+    private Locale defaultLocale;
+
+    @TempDir
+    File directory;
+
+    @BeforeEach
+    public void setPolishLocale() {
+        defaultLocale = Locale.getDefault();
+        Locale.setDefault(new Locale("pl", "PL"));
+    }
+
+    @AfterEach
+    public void restoreLocale() {
+        Locale.setDefault(defaultLocale);
+    }
+
+    @Test
+    public void histogramJsonIsValidInPolishLocale() {
+        Metrics.Histogram histogram = new Metrics.Histogram();
+        histogram.record(1);
+        histogram.record(2);
+
+        String json = histogram.toJson();
+        assertValidJson(json);
+        assertTrue(json.contains("\"mean\": 1.5"), json);
+    }
+
+    @Test
+    public void dumpIsValidJsonInPolishLocale() throws Exception {
+        Metrics metrics = new Metrics();
+        metrics.chainsGenerated(3, 1000);
+        metrics.workerChains(0).add(3);
+
+        File file = new File(directory, "metrics.jsonl");
+        Closeable dump = metrics.startDump(file, 3600);
+        dump.close();
+
+        List<String> lines = Files.readAllLines(file.toPath());
+        assertEquals(1, lines.size());
+        assertValidJson(lines.get(0));
+    }
+
+    /**
+     * The dump has only objects of numbers, so it is valid if removing every "name": number pair, and every
+     * "name": { which opens a nested object, leaves nothing but braces and separators.
+     */
+    private static void assertValidJson(String json) {
+        String rest = json.replaceAll("\"[^\"]*\": -?\\d+(\\.\\d+)?(?=[,}])", "").replaceAll("\"[^\"]*\": \\{", "{");
+        assertTrue(rest.matches("[{}, ]*"), json);
+    }
+}
@@ -0,0 +1,141 @@
+import keygenerators.KeySpace;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks RainbowTable.reduce against the reduction of the tables built before it was rewritten with long arithmetic,
+ * copied below: the cryptogram as a hex string, BigInteger arithmetic and the digits of IncrementalKeyGenerator.
+ * Tables written by either must stay interchangeable, so the keys have to be bit-identical.
+ */
+public class RainbowTableReduceTest {
+    private final static int CHAIN_LENGTH = 1000;
+    private final static int[] TABLE_INDICES = {0, 1, 7, 123456};
+    private final static int[] POSITIONS = {0, 1, 2, 499, CHAIN_LENGTH - 1};
+    private final static int[] BLOCK_COUNTS = {1, 2, 5}; // single-block and multi-block cryptograms
+    // Charset and the password lengths tested with it, up to the largest key space below Integer.MAX_VALUE
+    private final static Object[][] KEY_SPACES = {
+            {"0123456789", new int[]{1, 2, 3, 4, 5, 6, 7, 8}},
+            {"abcdefghijklmnopqrstuvwxyz", new int[]{1, 3, 5, 6}},
+            {"xyz", new int[]{1, 4, 8}},
+    };
+
+    @Test
+    public void reduceMatchesBaselineReduction() {
+        Random random = new Random(42);
+
+        for (Object[] keySpaceParameters : KEY_SPACES) {
+            byte[] byteset = ((String) keySpaceParameters[0]).getBytes(StandardCharsets.US_ASCII);
+            for (int passwordLength : (int[]) keySpaceParameters[1]) {
+                for (int tableIndex : TABLE_INDICES) {
+                    RainbowTable table = new RainbowTable(new KeySpace(byteset, passwordLength), CHAIN_LENGTH, "plaintext", 0, tableIndex);
+                    BaselineReduction baseline = new BaselineReduction(byteset, passwordLength);
+
+                    for (int nBlocks : BLOCK_COUNTS) {
+                        for (long[] cryptogram : cryptograms(random, nBlocks)) {
+                            for (int position : POSITIONS) {
+                                // Table t was specified as the positions t * chainLength .. (t + 1) * chainLength - 1 of the baseline
+                                byte[] expected = baseline.reduce(Hex.toHex(cryptogram), tableIndex * CHAIN_LENGTH + position);
+
+                                byte[] key = new byte[KeySpace.KEY_BYTES];
+                                long index = table.reduce(cryptogram, 0, nBlocks, position, key);
+
+                                String context = new String(byteset, StandardCharsets.US_ASCII) + " x " + passwordLength + ", tableIndex "
+                                        + tableIndex + ", position " + position + ", cryptogram " + Hex.toHex(cryptogram);
+                                assertArrayEquals(expected, key, context);
+                                assertEquals(table.getKeySpace().keyToIndex(expected), index, context);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    // Captured from the baseline build (DIGITS x 8, table 0), so that the copy below cannot drift together with the code
+    @Test
+    public void reduceMatchesBaselineVectors() {
+        RainbowTable table = new RainbowTable(8, CHAIN_LENGTH, "plaintext");
+        BaselineReduction baseline = new BaselineReduction("0123456789".getBytes(StandardCharsets.US_ASCII), 8);
+        String[][] vectors = {
+                // cryptogram, position, key
+                {"0000000000000000", "0", "00000000"},
+                {"ffffffffffffffff", "0", "51615590"},
+                {"0123456789abcdef", "17", "21968461"},
+                {"a1b2c3d4e5f60718293a4b5c6d7e8f90", "999", "93636530"},
+        };
+
+        for (String[] vector : vectors) {
+            long[] cryptogram = Hex.hexStringToBlocks(vector[0]);
+            int position = Integer.parseInt(vector[1]);
+            byte[] key = new byte[KeySpace.KEY_BYTES];
+
+            table.reduce(cryptogram, 0, cryptogram.length, position, key);
+            assertEquals(vector[2], new String(key, StandardCharsets.US_ASCII), vector[0]);
+            assertEquals(vector[2], new String(baseline.reduce(vector[0], position), StandardCharsets.US_ASCII), vector[0]);
+        }
+    }
+
+    @Test
+    public void reduceReadsOnlyItsRangeOfTheArray() {
+        RainbowTable table = new RainbowTable(8, CHAIN_LENGTH, "plaintext", 0, 3);
+        BaselineReduction baseline = new BaselineReduction("0123456789".getBytes(StandardCharsets.US_ASCII), 8);
+        long[] cryptograms = {-1L, 0x0123456789ABCDEFL, 0xFEDCBA9876543210L, -1L};
+
+        byte[] key = new byte[KeySpace.KEY_BYTES];
+        table.reduce(cryptograms, 1, 2, 5, key);
+        assertArrayEquals(baseline.reduce(Hex.toHex(cryptograms, 1, 2), 3 * CHAIN_LENGTH + 5), key);
+    }
+
+    // Random blocks plus the edge values of the unsigned 64-bit blocks
+    private static long[][] cryptograms(Random random, int nBlocks) {
+        long[][] cryptograms = new long[23][nBlocks];
+        Arrays.fill(cryptograms[0], 0L);
+        Arrays.fill(cryptograms[1], -1L);
+        Arrays.fill(cryptograms[2], Long.MIN_VALUE);
+        for (int i = 3; i < cryptograms.length; i++) {
+            for (int j = 0; j < nBlocks; j++) {
+                cryptograms[i][j] = random.nextLong();
+            }
+        }
+        return cryptograms;
+    }
+
+    // RainbowTable.reduce and IncrementalKeyGenerator.next of the baseline, verbatim apart from the fields they read
+    private static final class BaselineReduction {
+        private final byte[] byteset;
+        private final BigInteger modulo;
+
+        BaselineReduction(byte[] byteset, int passwordLength) {
+            this.byteset = byteset;
+            this.modulo = BigInteger.valueOf(byteset.length).pow(passwordLength);
+        }
+
+        byte[] reduce(String cryptogram, int position) {
+            // Convert hex string into decimal value
+            BigInteger temp = new BigInteger(cryptogram, 16);
+            // Reduction output depends on the chain position
+            temp = temp.add(BigInteger.valueOf(position));
+            temp = temp.mod(modulo);
+
+            return next(temp);
+        }
+
+        private byte[] next(BigInteger counter) {
+            BigInteger bytesetLength = BigInteger.valueOf(byteset.length);
+            byte[] key = new byte[8];
+            BigInteger counterCurrent = counter;
+            for (int i = 0; i < 8; i++) {
+                key[i] = byteset[counterCurrent.mod(bytesetLength).intValue()];
+                counterCurrent = counterCurrent.divide(bytesetLength);
+            }
+            return key;
+        }
+    }
+}
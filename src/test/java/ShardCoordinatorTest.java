@@ -0,0 +1,130 @@
+import keygenerators.KeySpace;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Builds and queries a sharded table with real worker processes on the local host: generate -w through Main, lookups
+ * through serve workers on loopback ports, compared with the same shard files queried in this process.
+ */
+public class ShardCoordinatorTest {
+    private final static int WORKERS = 2;
+    private final static int PASSWORD_LENGTH = 4;
+    private final static String PLAINTEXT = "abc";
+    private final static int CRYPTOGRAMS = 200;
+    private final static long PROCESS_TIMEOUT_SECS = 120;
+
+    private final static List<String> GENERATE_ARGS = Arrays.asList("--mode", "generate", "--chainLength", "50",
+            "--password", PLAINTEXT, "--nChains", "400", "--passwordLength", Integer.toString(PASSWORD_LENGTH), "--nThreads", "2",
+            "--workers", Integer.toString(WORKERS));
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void shardedTableAnswersLikeItsShardsInProcess() throws Exception {
+        File tableDirectory = new File(directory, "table");
+        assertEquals(0, runMain(GENERATE_ARGS, "--file", tableDirectory.getPath()));
+
+        List<RainbowTable> shards = new ArrayList<>();
+        List<List<String>> workerArgs = new ArrayList<>();
+        for (int i = 0; i < WORKERS; i++) {
+            File shardFile = new File(tableDirectory, ShardCoordinator.shardFileName(i, WORKERS));
+            assertTrue(shardFile.isFile(), shardFile + " missing");
+            shards.add(RainbowTable.readFromFile(shardFile.getPath()));
+            workerArgs.add(Arrays.asList("--mode", "serve", "--file", shardFile.getPath(), "--nThreads", "1", "--queryThreads", "1"));
+        }
+        RainbowTableSet inProcess = new RainbowTableSet(shards);
+
+        List<String> cryptograms = cryptograms(shards.get(0).getKeySpace());
+        Map<String, byte[]> expected = new HashMap<>();
+        for (String cryptogram : cryptograms) {
+            expected.put(cryptogram, inProcess.query(cryptogram, 1));
+        }
+        assertTrue(expected.values().stream().anyMatch(key -> key != null), "no cryptogram of the test is found by the table");
+
+        try (ShardCoordinator coordinator = ShardCoordinator.startLookupWorkers(workerArgs)) {
+            assertEquals(WORKERS, coordinator.getWorkerCount());
+
+            Map<String, byte[]> batch = new HashMap<>();
+            coordinator.lookupBatch(cryptograms.iterator(), batch::put);
+            assertEquals(cryptograms.size(), batch.size());
+
+            for (String cryptogram : cryptograms) {
+                assertSameAnswer(cryptogram, expected.get(cryptogram), batch.get(cryptogram));
+            }
+            String single = cryptograms.get(0);
+            assertSameAnswer(single, expected.get(single), coordinator.query(single));
+        }
+    }
+
+    @Test
+    public void failedWorkerFailsTheBuild() throws Exception {
+        File tableDirectory = new File(directory, "table");
+        File parts = new File(tableDirectory, ShardCoordinator.shardFileName(0, WORKERS) + ".parts");
+        assertTrue(parts.mkdirs());
+        // A checkpoint of other parameters, which the worker of shard 0 refuses to resume
+        Files.write(new File(parts, "checkpoint.properties").toPath(),
+                Arrays.asList("passwordLength=3", "chainLength=99", "plaintext=zzz"));
+
+        assertEquals(1, runMain(GENERATE_ARGS, "--file", tableDirectory.getPath(), "--resume"));
+        assertFalse(new File(tableDirectory, ShardCoordinator.shardFileName(0, WORKERS)).exists());
+    }
+
+    // DES ignores the lowest bit of every key byte, so the tables may crack a cryptogram with either of two equivalent keys
+    private static void assertSameAnswer(String cryptogram, byte[] expected, byte[] actual) {
+        assertEquals(expected != null, actual != null, cryptogram);
+        if (actual != null) {
+            DES des = new DES();
+            des.initializeEncryptor(actual);
+            assertEquals(cryptogram, des.encrypt(PLAINTEXT), "key " + new String(actual));
+        }
+    }
+
+    // Cryptograms of the plaintext under random keys of the key space, some of which are in the chains of the table
+    private static List<String> cryptograms(KeySpace keySpace) {
+        Random random = new Random(42);
+        DES des = new DES();
+        Set<String> cryptograms = new LinkedHashSet<>(); // keys differing in the ignored bits give the same cryptogram
+
+        for (int i = 0; i < CRYPTOGRAMS; i++) {
+            byte[] key = new byte[KeySpace.KEY_BYTES];
+            keySpace.indexToKey((long) (random.nextDouble() * keySpace.size()), key);
+            des.initializeEncryptor(key);
+            cryptograms.add(des.encrypt(PLAINTEXT));
+        }
+        return new ArrayList<>(cryptograms);
+    }
+
+    // Runs Main in a separate JVM, as the coordinator runs its workers, and returns its exit code
+    private static int runMain(List<String> args, String... moreArgs) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>(Arrays.asList(
+                new File(System.getProperty("java.home"), "bin" + File.separator + "java").getPath(),
+                "-cp", System.getProperty("java.class.path"), Main.class.getName()));
+        command.addAll(args);
+        command.addAll(Arrays.asList(moreArgs));
+
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (!process.waitFor(PROCESS_TIMEOUT_SECS, TimeUnit.SECONDS)) {
+            process.destroyForcibly();
+            throw new AssertionError("Main " + args + " did not finish in " + PROCESS_TIMEOUT_SECS + "s");
+        }
+        return process.exitValue();
+    }
+}